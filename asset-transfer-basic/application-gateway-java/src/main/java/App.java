@@ -7,15 +7,15 @@
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonParser;
-import io.grpc.Grpc;
+import io.grpc.Channel;
 import io.grpc.ManagedChannel;
-import io.grpc.TlsChannelCredentials;
 import org.hyperledger.fabric.client.CommitException;
 import org.hyperledger.fabric.client.CommitStatusException;
 import org.hyperledger.fabric.client.Contract;
 import org.hyperledger.fabric.client.EndorseException;
 import org.hyperledger.fabric.client.Gateway;
 import org.hyperledger.fabric.client.GatewayException;
+import org.hyperledger.fabric.client.Network;
 import org.hyperledger.fabric.client.SubmitException;
 import org.hyperledger.fabric.client.identity.Identities;
 import org.hyperledger.fabric.client.identity.Identity;
@@ -30,27 +30,33 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.security.InvalidKeyException;
 import java.security.cert.CertificateException;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
 public final class App {
 	private static final String MSP_ID = System.getenv().getOrDefault("MSP_ID", "Org1MSP");
-	private static final String CHANNEL_NAME = System.getenv().getOrDefault("CHANNEL_NAME", "mychannel");
-	private static final String CHAINCODE_NAME = System.getenv().getOrDefault("CHAINCODE_NAME", "basic");
+	static final String CHANNEL_NAME = System.getenv().getOrDefault("CHANNEL_NAME", "mychannel");
+	static final String CHAINCODE_NAME = System.getenv().getOrDefault("CHAINCODE_NAME", "basic");
 
+	// Path to the crypto materials of every organization.
+	private static final Path PEER_ORGANIZATIONS_PATH = Paths.get("../../test-network/organizations/peerOrganizations");
 	// Path to crypto materials.
-	private static final Path CRYPTO_PATH = Paths.get("../../test-network/organizations/peerOrganizations/org1.example.com");
+	private static final Path CRYPTO_PATH = PEER_ORGANIZATIONS_PATH.resolve("org1.example.com");
 	// Path to user certificate.
 	private static final Path CERT_PATH = CRYPTO_PATH.resolve(Paths.get("users/User1@org1.example.com/msp/signcerts/cert.pem"));
 	// Path to user private key directory.
 	private static final Path KEY_DIR_PATH = CRYPTO_PATH.resolve(Paths.get("users/User1@org1.example.com/msp/keystore"));
-	// Path to peer tls certificate.
-	private static final Path TLS_CERT_PATH = CRYPTO_PATH.resolve(Paths.get("peers/peer0.org1.example.com/tls/ca.crt"));
 
-	// Gateway peer end point.
-	private static final String PEER_ENDPOINT = "localhost:7051";
-	private static final String OVERRIDE_AUTH = "peer0.org1.example.com";
+	// Gateway peer end points, as host:port@peer-host-name. Evaluations are spread across all of
+	// them; other calls go to the first one that is healthy. Only the org1 peer by default, which
+	// every test network has; to add the org2 peer, set PEER_ENDPOINTS to
+	// "localhost:7051@peer0.org1.example.com,localhost:9051@peer0.org2.example.com".
+	private static final String PEER_ENDPOINTS = System.getenv().getOrDefault("PEER_ENDPOINTS",
+			"localhost:7051@peer0.org1.example.com");
 
+	private final Network network;
 	private final Contract contract;
 	private final String assetId = "asset" + Instant.now().toEpochMilli();
 	private final Gson gson = new GsonBuilder().setPrettyPrinting().create();
@@ -60,27 +66,25 @@ public final class App {
 		// this endpoint.
 		var channel = newGrpcConnection();
 
-		var builder = Gateway.newInstance().identity(newIdentity()).signer(newSigner()).connection(channel)
+		try (var gateway = newGatewayBuilder(channel).connect()) {
+			new App(gateway).run();
+		} finally {
+			channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+		}
+	}
+
+	static Gateway.Builder newGatewayBuilder(final Channel channel)
+			throws IOException, CertificateException, InvalidKeyException {
+		return Gateway.newInstance().identity(newIdentity()).signer(newSigner()).connection(channel)
 				// Default timeouts for different gRPC calls
 				.evaluateOptions(options -> options.withDeadlineAfter(5, TimeUnit.SECONDS))
 				.endorseOptions(options -> options.withDeadlineAfter(15, TimeUnit.SECONDS))
 				.submitOptions(options -> options.withDeadlineAfter(5, TimeUnit.SECONDS))
 				.commitStatusOptions(options -> options.withDeadlineAfter(1, TimeUnit.MINUTES));
-
-		try (var gateway = builder.connect()) {
-			new App(gateway).run();
-		} finally {
-			channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
-		}
 	}
 
-	private static ManagedChannel newGrpcConnection() throws IOException {
-		var credentials = TlsChannelCredentials.newBuilder()
-				.trustManager(TLS_CERT_PATH.toFile())
-				.build();
-		return Grpc.newChannelBuilder(PEER_ENDPOINT, credentials)
-				.overrideAuthority(OVERRIDE_AUTH)
-				.build();
+	static ManagedChannel newGrpcConnection() throws IOException {
+		return PeerPool.connect(PeerPool.parseEndpoints(PEER_ORGANIZATIONS_PATH, PEER_ENDPOINTS));
 	}
 
 	private static Identity newIdentity() throws IOException, CertificateException {
@@ -106,13 +110,13 @@ public final class App {
 	public App(final Gateway gateway) {
 		// Get a network instance representing the channel where the smart contract is
 		// deployed.
-		var network = gateway.getNetwork(CHANNEL_NAME);
+		network = gateway.getNetwork(CHANNEL_NAME);
 
 		// Get the smart contract from the network.
 		contract = network.getContract(CHAINCODE_NAME);
 	}
 
-	public void run() throws GatewayException, CommitException {
+	public void run() throws GatewayException, CommitException, InterruptedException, ExecutionException {
 		// Initialize a set of asset data on the ledger using the chaincode 'InitLedger' function.
 		initLedger();
 
@@ -125,6 +129,9 @@ public final class App {
 		// Update an existing asset asynchronously.
 		transferAssetAsync();
 
+		// Update an existing asset, guarded by the version last read.
+		transferAssetWithRetry();
+
 		// Get the asset details by assetID.
 		readAssetById();
 
@@ -178,31 +185,39 @@ public final class App {
 	}
 
 	/**
-	 * Submit transaction asynchronously, allowing the application to process the
-	 * smart contract response (e.g. update a UI) while waiting for the commit
-	 * notification.
+	 * Submit transaction asynchronously, allowing the application to carry on while
+	 * waiting for the commit notification. The SubmitPipeline learns of commits from
+	 * one block event stream shared by all the transactions it has in flight, rather
+	 * than from a commit status call per transaction.
 	 */
-	private void transferAssetAsync() throws EndorseException, SubmitException, CommitStatusException {
+	private void transferAssetAsync() throws GatewayException, InterruptedException, ExecutionException {
 		System.out.println("\n--> Async Submit Transaction: TransferAsset, updates existing asset owner");
 
-		var commit = contract.newProposal("TransferAsset")
-				.addArguments(assetId, "Saptha")
-				.build()
-				.endorse()
-				.submitAsync();
+		try (var pipeline = new SubmitPipeline(network, contract, 100)) {
+			var commit = pipeline.submit("TransferAsset", assetId, "Saptha");
 
-		var result = commit.getResult();
-		var oldOwner = new String(result, StandardCharsets.UTF_8);
+			System.out.println("*** Successfully submitted transaction to transfer ownership to Saptha");
+			System.out.println("*** Waiting for transaction commit");
 
-		System.out.println("*** Successfully submitted transaction to transfer ownership from " + oldOwner + " to Saptha");
-		System.out.println("*** Waiting for transaction commit");
-
-		var status = commit.getStatus();
-		if (!status.isSuccessful()) {
-			throw new RuntimeException("Transaction " + status.getTransactionId() +
-					" failed to commit with status code " + status.getCode());
+			var committed = commit.get();
+			if (!committed.isSuccessful()) {
+				throw new RuntimeException("Transaction " + committed.getTransactionId() +
+						" failed to commit with status code " + committed.getCode());
+			}
 		}
-		
+
+		System.out.println("*** Transaction committed successfully");
+	}
+
+	/**
+	 * Submit a transaction that the smart contract rejects if the asset has changed since it
+	 * was read, retrying against the new version when it has.
+	 */
+	private void transferAssetWithRetry() throws GatewayException, InterruptedException {
+		System.out.println("\n--> Submit Transaction: TransferAsset, with the expected asset version and retries on conflicts");
+
+		new OptimisticRetry(contract, 5, Duration.ofMillis(100)).submit(assetId, "TransferAsset", assetId, "Tom");
+
 		System.out.println("*** Transaction committed successfully");
 	}
 
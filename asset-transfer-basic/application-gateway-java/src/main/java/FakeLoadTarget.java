@@ -0,0 +1,102 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An in-process stand-in for the basic contract behind a Gateway, so the load generator can be
+ * run and checked without a Fabric network. Assets and owners are kept in memory, and each step
+ * sleeps for an exponentially distributed time around its configured mean, as network calls do.
+ */
+public final class FakeLoadTarget implements LoadTarget {
+	private final Map<String, String> owners = new ConcurrentHashMap<>();
+	private final Map<String, String> assetOwners = new ConcurrentHashMap<>();
+	private final Duration evaluateLatency;
+	private final Duration endorseLatency;
+	private final Duration submitLatency;
+	private final Duration commitLatency;
+
+	public FakeLoadTarget(final Duration evaluateLatency, final Duration endorseLatency, final Duration submitLatency,
+			final Duration commitLatency) {
+		this.evaluateLatency = evaluateLatency;
+		this.endorseLatency = endorseLatency;
+		this.submitLatency = submitLatency;
+		this.commitLatency = commitLatency;
+	}
+
+	/**
+	 * Latencies in the range of a local test network with the default batch timeout.
+	 */
+	public static FakeLoadTarget withDefaultLatencies() {
+		return new FakeLoadTarget(Duration.ofMillis(2), Duration.ofMillis(5), Duration.ofMillis(2), Duration.ofMillis(500));
+	}
+
+	@Override
+	public Endorsed endorse(final String transactionName, final String... args) {
+		pause(endorseLatency);
+		Runnable write = simulate(transactionName, args);
+		return () -> {
+			pause(submitLatency);
+			return () -> {
+				pause(commitLatency);
+				write.run();
+			};
+		};
+	}
+
+	/**
+	 * Checks the transaction as the chaincode would at endorsement.
+	 *
+	 * @return the write applied when the transaction commits
+	 */
+	private Runnable simulate(final String transactionName, final String... args) {
+		switch (transactionName) {
+			case "CreateOwner":
+				require(!owners.containsKey(args[0]), "OWNER ALREADY EXISTS");
+				return () -> owners.put(args[0], args[1]);
+			case "CreateAsset":
+				require(!assetOwners.containsKey(args[0]), "ASSET ALREADY EXISTS");
+				require(owners.containsKey(args[3]), "OWNER DOES NOT EXIST");
+				return () -> assetOwners.put(args[0], args[3]);
+			case "TransferAsset":
+				require(assetOwners.containsKey(args[0]), "ASSET DOES NOT EXIST");
+				require(owners.containsKey(args[1]), "OWNER DOES NOT EXIST");
+				require(!args[1].equals(assetOwners.get(args[0])), "OWNER ALREADY OWNS ASSET");
+				return () -> assetOwners.put(args[0], args[1]);
+			default:
+				throw new IllegalArgumentException("Unsupported transaction " + transactionName);
+		}
+	}
+
+	@Override
+	public byte[] evaluate(final String transactionName, final String... args) {
+		pause(evaluateLatency);
+		if (!"ReadAsset".equals(transactionName)) {
+			throw new IllegalArgumentException("Unsupported transaction " + transactionName);
+		}
+		var ownerId = assetOwners.get(args[0]);
+		require(ownerId != null, "ASSET DOES NOT EXIST");
+		return ("{\"assetID\":\"" + args[0] + "\",\"ownerID\":\"" + ownerId + "\"}").getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static void require(final boolean condition, final String message) {
+		if (!condition) {
+			throw new IllegalStateException(message);
+		}
+	}
+
+	private static void pause(final Duration mean) {
+		if (mean.isZero()) {
+			return;
+		}
+		var nanos = (long) (-Math.log(1 - ThreadLocalRandom.current().nextDouble()) * mean.toNanos());
+		LockSupport.parkNanos(Math.min(nanos, TimeUnit.SECONDS.toNanos(30)));
+	}
+}
@@ -0,0 +1,66 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+import org.hyperledger.fabric.client.CommitException;
+import org.hyperledger.fabric.client.Contract;
+
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Drives the basic contract through a Gateway, submitting with
+ * {@code newProposal(...).build().endorse().submitAsync()} so that endorsement, submission and
+ * commit are timed separately. Commits are tracked with a commit status call per transaction,
+ * or from block events when a {@link SubmitPipeline} is given.
+ */
+public final class GatewayLoadTarget implements LoadTarget {
+	private final Contract contract;
+	private final SubmitPipeline pipeline;
+
+	public GatewayLoadTarget(final Contract contract) {
+		this(contract, null);
+	}
+
+	public GatewayLoadTarget(final Contract contract, final SubmitPipeline pipeline) {
+		this.contract = contract;
+		this.pipeline = pipeline;
+	}
+
+	@Override
+	public Endorsed endorse(final String transactionName, final String... args) throws Exception {
+		var transaction = contract.newProposal(transactionName)
+				.addArguments(args)
+				.build()
+				.endorse();
+		if (pipeline != null) {
+			return () -> {
+				var commit = pipeline.submit(transaction);
+				return () -> {
+					SubmitPipeline.Committed committed;
+					try {
+						committed = commit.get();
+					} catch (ExecutionException e) {
+						throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+					}
+					if (!committed.isSuccessful()) {
+						throw new CommitException(committed);
+					}
+				};
+			};
+		}
+		return () -> {
+			var commit = transaction.submitAsync();
+			return () -> {
+				var status = commit.getStatus();
+				if (!status.isSuccessful()) {
+					throw new CommitException(status);
+				}
+			};
+		};
+	}
+
+	@Override
+	public byte[] evaluate(final String transactionName, final String... args) throws Exception {
+		return contract.evaluateTransaction(transactionName, args);
+	}
+}
@@ -0,0 +1,309 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+import org.hyperledger.fabric.client.Gateway;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drives a mix of CreateAsset, TransferAsset and ReadAsset transactions against the basic
+ * contract from virtual threads, with at most LOAD_CONCURRENCY transactions in flight, and
+ * writes the endorse, submit, commit and evaluate latencies to a JSON and a CSV report.
+ *
+ * <p>Configured with environment variables:
+ * <ul>
+ * <li>LOAD_TARGET: "gateway" (default) to use the Gateway settings of {@link App}, or "fake" for an in-process fake</li>
+ * <li>LOAD_CONCURRENCY: transactions in flight, 64 by default</li>
+ * <li>LOAD_DURATION: seconds to run for, 60 by default</li>
+ * <li>LOAD_MIX: relative weights of the transactions, "CreateAsset=20,TransferAsset=20,ReadAsset=60" by default</li>
+ * <li>LOAD_OWNERS and LOAD_SEED_ASSETS: owners and assets created before the run, 10 and 100 by default</li>
+ * <li>LOAD_COMMIT: "events" (default) to learn of commits from one block event stream through a
+ * {@link SubmitPipeline}, or "status" for a commit status call per transaction</li>
+ * <li>LOAD_REPORT: path of the report without extension, "build/load-report" by default</li>
+ * </ul>
+ */
+public final class LoadGenerator {
+	private static final String CREATE_ASSET = "CreateAsset";
+	private static final String TRANSFER_ASSET = "TransferAsset";
+	private static final String READ_ASSET = "ReadAsset";
+
+	private static final String TARGET = System.getenv().getOrDefault("LOAD_TARGET", "gateway");
+	private static final int CONCURRENCY = Integer.parseInt(System.getenv().getOrDefault("LOAD_CONCURRENCY", "64"));
+	private static final Duration DURATION = Duration.ofSeconds(Long.parseLong(System.getenv().getOrDefault("LOAD_DURATION", "60")));
+	private static final String MIX = System.getenv().getOrDefault("LOAD_MIX", "CreateAsset=20,TransferAsset=20,ReadAsset=60");
+	private static final int OWNERS = Integer.parseInt(System.getenv().getOrDefault("LOAD_OWNERS", "10"));
+	private static final int SEED_ASSETS = Integer.parseInt(System.getenv().getOrDefault("LOAD_SEED_ASSETS", "100"));
+	private static final boolean COMMIT_EVENTS = !"status".equals(System.getenv().getOrDefault("LOAD_COMMIT", "events"));
+	private static final Path REPORT = Paths.get(System.getenv().getOrDefault("LOAD_REPORT", "build/load-report"));
+
+	private final LoadTarget target;
+	private final int concurrency;
+	private final Map<String, Integer> mix;
+	private final int totalWeight;
+	private final LoadReport report = new LoadReport();
+
+	// IDs are unique to the run, so that runs against the same ledger do not collide.
+	private final String runId = Long.toString(System.currentTimeMillis(), 36);
+	private final AtomicLong nextAsset = new AtomicLong();
+	private final List<String> owners = new ArrayList<>();
+	private final List<String> assets = Collections.synchronizedList(new ArrayList<>());
+	// Last known owner of each asset, so that transfers always go to someone else.
+	private final Map<String, String> assetOwners = new ConcurrentHashMap<>();
+
+	public static void main(final String[] args) throws Exception {
+		if ("fake".equals(TARGET)) {
+			run(FakeLoadTarget.withDefaultLatencies());
+			return;
+		}
+
+		var channel = App.newGrpcConnection();
+		try (Gateway gateway = App.newGatewayBuilder(channel).connect()) {
+			var network = gateway.getNetwork(App.CHANNEL_NAME);
+			var contract = network.getContract(App.CHAINCODE_NAME);
+			if (!COMMIT_EVENTS) {
+				run(new GatewayLoadTarget(contract));
+				return;
+			}
+			try (var pipeline = new SubmitPipeline(network, contract, CONCURRENCY)) {
+				run(new GatewayLoadTarget(contract, pipeline));
+			}
+		} finally {
+			channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+		}
+	}
+
+	private static void run(final LoadTarget target) throws Exception {
+		try (target) {
+			var generator = new LoadGenerator(target, CONCURRENCY, parseMix(MIX));
+			System.out.println("--> Creating " + OWNERS + " owners and " + SEED_ASSETS + " assets");
+			generator.setUp(OWNERS, SEED_ASSETS);
+			System.out.println("--> Running " + MIX + " for " + DURATION.toSeconds() + "s with " + CONCURRENCY + " in flight");
+			var report = generator.run(DURATION);
+			report.write(REPORT);
+			System.out.print(report.toCsv());
+			System.out.println("*** Report written to " + REPORT + ".json and " + REPORT + ".csv");
+		}
+	}
+
+	public LoadGenerator(final LoadTarget target, final int concurrency, final Map<String, Integer> mix) {
+		this.target = target;
+		this.concurrency = concurrency;
+		this.mix = mix;
+		this.totalWeight = mix.values().stream().mapToInt(Integer::intValue).sum();
+		if (totalWeight <= 0) {
+			throw new IllegalArgumentException("The transaction mix has no weight");
+		}
+	}
+
+	/**
+	 * @param mix weights as "CreateAsset=20,TransferAsset=20,ReadAsset=60"
+	 */
+	static Map<String, Integer> parseMix(final String mix) {
+		var weights = new LinkedHashMap<String, Integer>();
+		for (var entry : mix.split(",")) {
+			var parts = entry.trim().split("=");
+			var name = parts[0].trim();
+			if (parts.length != 2 || !(CREATE_ASSET.equals(name) || TRANSFER_ASSET.equals(name) || READ_ASSET.equals(name))) {
+				throw new IllegalArgumentException("Invalid transaction mix entry: " + entry);
+			}
+			weights.put(name, Integer.parseInt(parts[1].trim()));
+		}
+		return weights;
+	}
+
+	/**
+	 * Creates the owners, then the assets that transfers and reads start from. Not measured.
+	 */
+	public void setUp(final int ownerCount, final int assetCount) throws InterruptedException, ExecutionException {
+		if (ownerCount < 2 || assetCount < 1) {
+			throw new IllegalArgumentException("At least two owners and one asset are needed to transfer and read assets");
+		}
+		var createOwners = new ArrayList<Callable<Void>>();
+		for (int i = 0; i < ownerCount; i++) {
+			var ownerId = runId + "-owner" + i;
+			owners.add(ownerId);
+			createOwners.add(() -> {
+				target.submit("CreateOwner", ownerId, "Load", "Generator");
+				return null;
+			});
+		}
+		runAll(createOwners);
+
+		var createAssets = new ArrayList<Callable<Void>>();
+		for (int i = 0; i < assetCount; i++) {
+			var assetId = newAssetId();
+			var ownerId = randomOwner();
+			createAssets.add(() -> {
+				target.submit(CREATE_ASSET, assetId, "blue", "5", ownerId, "300");
+				assetOwners.put(assetId, ownerId);
+				assets.add(assetId);
+				return null;
+			});
+		}
+		runAll(createAssets);
+	}
+
+	private void runAll(final List<Callable<Void>> tasks) throws InterruptedException, ExecutionException {
+		var inFlight = new Semaphore(concurrency);
+		try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+			var futures = new ArrayList<Future<Void>>();
+			for (var task : tasks) {
+				inFlight.acquire();
+				futures.add(executor.submit(() -> {
+					try {
+						return task.call();
+					} finally {
+						inFlight.release();
+					}
+				}));
+			}
+			for (var future : futures) {
+				future.get();
+			}
+		}
+	}
+
+	/**
+	 * Starts a transaction whenever one of the concurrency slots is free, until the duration has
+	 * passed, then waits for the transactions in flight.
+	 */
+	public LoadReport run(final Duration duration) throws InterruptedException {
+		var inFlight = new Semaphore(concurrency);
+		var start = System.nanoTime();
+		var deadline = start + duration.toNanos();
+		try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+			while (System.nanoTime() < deadline) {
+				if (!inFlight.tryAcquire(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+					break;
+				}
+				executor.execute(() -> {
+					try {
+						runOne(pickTransaction());
+					} finally {
+						inFlight.release();
+					}
+				});
+			}
+		}
+		report.finish(System.nanoTime() - start);
+		return report;
+	}
+
+	private String pickTransaction() {
+		var point = ThreadLocalRandom.current().nextInt(totalWeight);
+		for (var weight : mix.entrySet()) {
+			point -= weight.getValue();
+			if (point < 0) {
+				return weight.getKey();
+			}
+		}
+		throw new IllegalStateException("Unreachable");
+	}
+
+	private void runOne(final String transactionName) {
+		switch (transactionName) {
+			case CREATE_ASSET:
+				var assetId = newAssetId();
+				var ownerId = randomOwner();
+				if (submit(CREATE_ASSET, assetId, "blue", "5", ownerId, "300")) {
+					assetOwners.put(assetId, ownerId);
+					assets.add(assetId);
+				}
+				break;
+			case TRANSFER_ASSET:
+				var transferredId = randomAsset();
+				var newOwnerId = randomOwnerOtherThan(assetOwners.get(transferredId));
+				if (submit(TRANSFER_ASSET, transferredId, newOwnerId)) {
+					assetOwners.put(transferredId, newOwnerId);
+				}
+				break;
+			default:
+				evaluate(READ_ASSET, randomAsset());
+		}
+	}
+
+	/**
+	 * Endorses, submits and waits for the commit of a transaction, timing each step.
+	 *
+	 * @return true if the transaction committed successfully
+	 */
+	private boolean submit(final String transactionName, final String... args) {
+		var step = LoadReport.ENDORSE;
+		try {
+			var start = System.nanoTime();
+			var endorsed = target.endorse(transactionName, args);
+			start = report.record(LoadReport.ENDORSE, start);
+
+			step = LoadReport.SUBMIT;
+			var submitted = endorsed.submit();
+			start = report.record(LoadReport.SUBMIT, start);
+
+			step = LoadReport.COMMIT;
+			submitted.awaitCommit();
+			report.record(LoadReport.COMMIT, start);
+
+			report.succeeded(transactionName);
+			return true;
+		} catch (Exception e) {
+			if (e instanceof InterruptedException) {
+				Thread.currentThread().interrupt();
+			}
+			report.failed(transactionName, step, e);
+			return false;
+		}
+	}
+
+	private void evaluate(final String transactionName, final String... args) {
+		try {
+			var start = System.nanoTime();
+			target.evaluate(transactionName, args);
+			report.record(LoadReport.EVALUATE, start);
+			report.succeeded(transactionName);
+		} catch (Exception e) {
+			if (e instanceof InterruptedException) {
+				Thread.currentThread().interrupt();
+			}
+			report.failed(transactionName, LoadReport.EVALUATE, e);
+		}
+	}
+
+	private String newAssetId() {
+		return runId + "-asset" + nextAsset.getAndIncrement();
+	}
+
+	private String randomOwner() {
+		return owners.get(ThreadLocalRandom.current().nextInt(owners.size()));
+	}
+
+	/**
+	 * Picks from all owners but the last, swapping in the last if the pick is the current owner,
+	 * so that each of the other owners is equally likely.
+	 */
+	private String randomOwnerOtherThan(final String currentOwnerId) {
+		var ownerId = owners.get(ThreadLocalRandom.current().nextInt(owners.size() - 1));
+		return ownerId.equals(currentOwnerId) ? owners.get(owners.size() - 1) : ownerId;
+	}
+
+	private String randomAsset() {
+		synchronized (assets) {
+			return assets.get(ThreadLocalRandom.current().nextInt(assets.size()));
+		}
+	}
+}
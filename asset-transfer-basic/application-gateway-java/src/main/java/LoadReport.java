@@ -0,0 +1,191 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.hyperledger.fabric.client.CommitException;
+import org.hyperledger.fabric.client.GatewayException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencies and outcomes recorded by the load generator, safe to update from many threads.
+ * Latencies are kept per step in HdrHistograms with microsecond resolution; outcomes are counted
+ * per transaction name, and failures also per step and {@link #errorKey(Exception) kind of error}.
+ */
+public final class LoadReport {
+	static final String EVALUATE = "evaluate";
+	static final String ENDORSE = "endorse";
+	static final String SUBMIT = "submit";
+	static final String COMMIT = "commit";
+
+	private static final String[] STEPS = {EVALUATE, ENDORSE, SUBMIT, COMMIT};
+	private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+	private final Map<String, Histogram> latencies = new ConcurrentHashMap<>();
+	private final Map<String, LongAdder> succeeded = new ConcurrentHashMap<>();
+	private final Map<String, LongAdder> failed = new ConcurrentHashMap<>();
+	private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+	private long elapsedNanos;
+
+	public LoadReport() {
+		for (var step : STEPS) {
+			latencies.put(step, new ConcurrentHistogram(3));
+		}
+	}
+
+	/**
+	 * Records the time a step took since startNanos.
+	 *
+	 * @return the current time, to start timing the next step from
+	 */
+	long record(final String step, final long startNanos) {
+		var now = System.nanoTime();
+		latencies.get(step).recordValue(TimeUnit.NANOSECONDS.toMicros(now - startNanos));
+		return now;
+	}
+
+	void succeeded(final String transactionName) {
+		succeeded.computeIfAbsent(transactionName, name -> new LongAdder()).increment();
+	}
+
+	void failed(final String transactionName, final String step, final Exception error) {
+		failed.computeIfAbsent(transactionName, name -> new LongAdder()).increment();
+		errors.computeIfAbsent(transactionName + " " + step + ": " + errorKey(error), key -> new LongAdder()).increment();
+	}
+
+	/**
+	 * Failures are grouped by exception type, with the validation code of a failed commit or the
+	 * gRPC status code of a failed Gateway call. Messages are not used, as they usually contain
+	 * the transaction ID and would give every failure a group of its own.
+	 */
+	static String errorKey(final Exception error) {
+		if (error instanceof CommitException) {
+			return error.getClass().getSimpleName() + " " + ((CommitException) error).getCode();
+		}
+		if (error instanceof GatewayException) {
+			return error.getClass().getSimpleName() + " " + ((GatewayException) error).getStatus().getCode();
+		}
+		return error.getClass().getSimpleName();
+	}
+
+	/**
+	 * Sets the length of the measured run, which throughput is computed over.
+	 */
+	void finish(final long elapsedNanos) {
+		this.elapsedNanos = elapsedNanos;
+	}
+
+	long total() {
+		return sum(succeeded) + sum(failed);
+	}
+
+	private static long sum(final Map<String, LongAdder> counts) {
+		return counts.values().stream().mapToLong(LongAdder::sum).sum();
+	}
+
+	private double seconds() {
+		return elapsedNanos / 1e9;
+	}
+
+	public JsonObject toJson() {
+		var json = new JsonObject();
+		json.addProperty("durationSeconds", seconds());
+		json.addProperty("transactionsPerSecond", sum(succeeded) / seconds());
+
+		var transactions = new JsonObject();
+		var names = new TreeMap<String, Object>();
+		succeeded.keySet().forEach(name -> names.put(name, name));
+		failed.keySet().forEach(name -> names.put(name, name));
+		for (var name : names.keySet()) {
+			var counts = new JsonObject();
+			counts.addProperty("succeeded", count(succeeded, name));
+			counts.addProperty("failed", count(failed, name));
+			transactions.add(name, counts);
+		}
+		json.add("transactions", transactions);
+
+		var steps = new JsonObject();
+		for (var step : STEPS) {
+			var histogram = latencies.get(step);
+			var summary = new JsonObject();
+			summary.addProperty("count", histogram.getTotalCount());
+			summary.addProperty("meanMillis", millis(histogram.getMean()));
+			for (var percentile : PERCENTILES) {
+				summary.addProperty("p" + percentileName(percentile) + "Millis",
+						millis(histogram.getValueAtPercentile(percentile)));
+			}
+			summary.addProperty("maxMillis", millis(histogram.getMaxValue()));
+			steps.add(step, summary);
+		}
+		json.add("latencies", steps);
+
+		var errorCounts = new JsonObject();
+		new TreeMap<>(errors).forEach((error, count) -> errorCounts.addProperty(error, count.sum()));
+		json.add("errors", errorCounts);
+		return json;
+	}
+
+	/**
+	 * One row per step: count, mean, percentiles and max, in milliseconds.
+	 */
+	public String toCsv() {
+		var csv = new StringBuilder("step,count,mean_ms");
+		for (var percentile : PERCENTILES) {
+			csv.append(",p").append(percentileName(percentile)).append("_ms");
+		}
+		csv.append(",max_ms\n");
+		for (var step : STEPS) {
+			var histogram = latencies.get(step);
+			csv.append(step).append(',').append(histogram.getTotalCount())
+					.append(',').append(format(millis(histogram.getMean())));
+			for (var percentile : PERCENTILES) {
+				csv.append(',').append(format(millis(histogram.getValueAtPercentile(percentile))));
+			}
+			csv.append(',').append(format(millis(histogram.getMaxValue()))).append('\n');
+		}
+		return csv.toString();
+	}
+
+	/**
+	 * Writes the report to base.json and base.csv.
+	 */
+	public void write(final Path base) throws IOException {
+		var parent = base.toAbsolutePath().getParent();
+		if (parent != null) {
+			Files.createDirectories(parent);
+		}
+		var gson = new GsonBuilder().setPrettyPrinting().create();
+		Files.writeString(base.resolveSibling(base.getFileName() + ".json"), gson.toJson(toJson()), StandardCharsets.UTF_8);
+		Files.writeString(base.resolveSibling(base.getFileName() + ".csv"), toCsv(), StandardCharsets.UTF_8);
+	}
+
+	private static long count(final Map<String, LongAdder> counts, final String name) {
+		var count = counts.get(name);
+		return count == null ? 0 : count.sum();
+	}
+
+	private static String percentileName(final double percentile) {
+		return percentile == Math.rint(percentile) ? Long.toString((long) percentile) : Double.toString(percentile).replace(".", "");
+	}
+
+	private static double millis(final double micros) {
+		return Math.round(micros) / 1000.0;
+	}
+
+	private static String format(final double value) {
+		return String.format(Locale.ROOT, "%.3f", value);
+	}
+}
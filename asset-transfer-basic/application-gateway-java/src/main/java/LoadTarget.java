@@ -0,0 +1,44 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+/**
+ * What the load generator drives: the basic contract behind a Gateway, or an in-process fake.
+ * Submitting is split into its three steps so that each one can be timed on its own.
+ */
+public interface LoadTarget extends AutoCloseable {
+
+	/**
+	 * A proposal endorsed by enough peers, ready to be sent to the orderer.
+	 */
+	interface Endorsed {
+		Submitted submit() throws Exception;
+	}
+
+	/**
+	 * A transaction accepted by the orderer and waiting to be committed.
+	 */
+	interface Submitted {
+		/**
+		 * Blocks until the transaction is committed.
+		 *
+		 * @throws Exception if it fails to commit, e.g. on an MVCC read conflict
+		 */
+		void awaitCommit() throws Exception;
+	}
+
+	Endorsed endorse(String transactionName, String... args) throws Exception;
+
+	byte[] evaluate(String transactionName, String... args) throws Exception;
+
+	/**
+	 * Endorses, submits and waits for the commit of a transaction, for setup steps that are not measured.
+	 */
+	default void submit(final String transactionName, final String... args) throws Exception {
+		endorse(transactionName, args).submit().awaitCommit();
+	}
+
+	@Override
+	default void close() throws Exception {
+	}
+}
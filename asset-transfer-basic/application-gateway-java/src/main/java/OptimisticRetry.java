@@ -0,0 +1,99 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import org.hyperledger.fabric.client.Contract;
+import org.hyperledger.fabric.client.EndorseException;
+import org.hyperledger.fabric.client.GatewayException;
+import org.hyperledger.fabric.protos.peer.TxValidationCode;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Submits asset transactions guarded by the asset version the client read. The chaincode
+ * rejects a stale version at endorsement, before any writes; the transaction is then retried
+ * against a freshly read version, as it is when it loses a read conflict at commit.
+ */
+public final class OptimisticRetry {
+	// Transient data key read by the chaincode's TransferAsset and UpdateAsset.
+	private static final String EXPECTED_VERSION = "expectedVersion";
+	private static final String VERSION_CONFLICT = "VERSION CONFLICT";
+	// Lost races at commit: a key read, or a range scanned, was written by an earlier transaction.
+	private static final Set<TxValidationCode> RETRYABLE_CODES =
+			EnumSet.of(TxValidationCode.MVCC_READ_CONFLICT, TxValidationCode.PHANTOM_READ_CONFLICT);
+
+	private final Contract contract;
+	private final int maxAttempts;
+	private final Duration initialBackoff;
+
+	public OptimisticRetry(final Contract contract, final int maxAttempts, final Duration initialBackoff) {
+		this.contract = contract;
+		this.maxAttempts = maxAttempts;
+		this.initialBackoff = initialBackoff;
+	}
+
+	/**
+	 * Reads the asset's version, then submits the transaction with it and waits for the commit.
+	 * Version conflicts at endorsement, and MVCC and phantom read conflicts at commit, are
+	 * retried with exponential backoff and full jitter until maxAttempts is reached.
+	 *
+	 * @return the transaction result
+	 */
+	public byte[] submit(final String assetId, final String transactionName, final String... args)
+			throws GatewayException, InterruptedException {
+		for (int attempt = 1; ; attempt++) {
+			var version = readVersion(assetId);
+			try {
+				var commit = contract.newProposal(transactionName)
+						.addArguments(args)
+						.putTransient(EXPECTED_VERSION, Long.toString(version).getBytes(StandardCharsets.UTF_8))
+						.build()
+						.endorse()
+						.submitAsync();
+
+				var status = commit.getStatus();
+				if (status.isSuccessful()) {
+					return commit.getResult();
+				}
+				if (attempt >= maxAttempts || !RETRYABLE_CODES.contains(status.getCode())) {
+					throw new RuntimeException("Transaction " + status.getTransactionId() +
+							" failed to commit with status code " + status.getCode());
+				}
+			} catch (EndorseException e) {
+				if (attempt >= maxAttempts || !isVersionConflict(e)) {
+					throw e;
+				}
+			}
+			backOff(attempt);
+		}
+	}
+
+	private long readVersion(final String assetId) throws GatewayException {
+		var asset = JsonParser.parseString(new String(contract.evaluateTransaction("ReadAsset", assetId), StandardCharsets.UTF_8));
+		JsonElement version = asset.getAsJsonObject().get("version");
+		return version == null || version.isJsonNull() ? 0 : version.getAsLong();
+	}
+
+	private static boolean isVersionConflict(final EndorseException e) {
+		if (e.getMessage() != null && e.getMessage().contains(VERSION_CONFLICT)) {
+			return true;
+		}
+		for (var detail : e.getDetails()) {
+			if (detail.getMessage().contains(VERSION_CONFLICT)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void backOff(final int attempt) throws InterruptedException {
+		var ceiling = initialBackoff.toMillis() << Math.min(attempt - 1, 16);
+		Thread.sleep(ThreadLocalRandom.current().nextLong(ceiling + 1));
+	}
+}
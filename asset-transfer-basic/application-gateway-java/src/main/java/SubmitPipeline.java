@@ -0,0 +1,273 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import org.hyperledger.fabric.client.CloseableIterator;
+import org.hyperledger.fabric.client.Commit;
+import org.hyperledger.fabric.client.CommitStatusException;
+import org.hyperledger.fabric.client.Contract;
+import org.hyperledger.fabric.client.EndorseException;
+import org.hyperledger.fabric.client.GatewayException;
+import org.hyperledger.fabric.client.Network;
+import org.hyperledger.fabric.client.Status;
+import org.hyperledger.fabric.client.SubmitException;
+import org.hyperledger.fabric.client.Transaction;
+import org.hyperledger.fabric.protos.common.BlockchainInfo;
+import org.hyperledger.fabric.protos.peer.FilteredBlock;
+import org.hyperledger.fabric.protos.peer.TxValidationCode;
+
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps up to maxInFlight transactions submitted at once and learns of their commits from one
+ * filtered block event stream, instead of one commit status call per transaction. Every
+ * transaction in a block is matched against the pending transaction IDs, and the futures of
+ * those found are completed with the transaction's validation code.
+ *
+ * <p>The event stream starts at the ledger height read from qscc when the pipeline is created.
+ * Blocks are numbered from 0, so the height is the number of the next block to be committed, and
+ * every transaction submitted through the pipeline commits in a block the stream delivers.
+ * A transaction whose block has not been seen within the commit timeout, as when the orderer
+ * drops it, falls back to a commit status call, so its slot is always released.
+ */
+public final class SubmitPipeline implements AutoCloseable {
+	public static final Duration DEFAULT_COMMIT_TIMEOUT = Duration.ofSeconds(30);
+
+	// How often pending transactions are checked against their deadline.
+	private static final long SWEEP_INTERVAL_MILLIS = 1000;
+
+	/**
+	 * The outcome of a committed transaction, as found in its block.
+	 */
+	public static final class Committed implements Status {
+		private final String transactionId;
+		private final byte[] result;
+		private final long blockNumber;
+		private final TxValidationCode code;
+
+		Committed(final String transactionId, final byte[] result, final long blockNumber, final TxValidationCode code) {
+			this.transactionId = transactionId;
+			this.result = result;
+			this.blockNumber = blockNumber;
+			this.code = code;
+		}
+
+		@Override
+		public String getTransactionId() {
+			return transactionId;
+		}
+
+		/**
+		 * @return the result returned by the smart contract at endorsement
+		 */
+		public byte[] getResult() {
+			return result;
+		}
+
+		@Override
+		public long getBlockNumber() {
+			return blockNumber;
+		}
+
+		@Override
+		public TxValidationCode getCode() {
+			return code;
+		}
+
+		@Override
+		public boolean isSuccessful() {
+			return code == TxValidationCode.VALID;
+		}
+	}
+
+	/**
+	 * A submitted transaction waiting for its block.
+	 */
+	private static final class Pending {
+		private final CompletableFuture<Committed> future = new CompletableFuture<>();
+		private final byte[] result;
+		private final long deadlineNanos;
+		// Set once submitted; entries not yet submitted are never timed out.
+		private volatile Commit commit;
+
+		Pending(final byte[] result, final long deadlineNanos) {
+			this.result = result;
+			this.deadlineNanos = deadlineNanos;
+		}
+	}
+
+	private final Contract contract;
+	private final Semaphore inFlight;
+	private final long commitTimeoutNanos;
+	private final Map<String, Pending> pending = new ConcurrentHashMap<>();
+	private final CloseableIterator<FilteredBlock> blocks;
+	private final Thread dispatcher;
+	private final ScheduledExecutorService timeouts;
+	private volatile boolean closed;
+	private volatile RuntimeException failure;
+
+	public SubmitPipeline(final Network network, final Contract contract, final int maxInFlight) throws GatewayException {
+		this(network, contract, maxInFlight, DEFAULT_COMMIT_TIMEOUT);
+	}
+
+	public SubmitPipeline(final Network network, final Contract contract, final int maxInFlight,
+			final Duration commitTimeout) throws GatewayException {
+		this.contract = contract;
+		this.inFlight = new Semaphore(maxInFlight);
+		this.commitTimeoutNanos = commitTimeout.toNanos();
+		this.blocks = network.newFilteredBlockEventsRequest()
+				.startBlock(getLedgerHeight(network))
+				.build()
+				.getEvents();
+		this.dispatcher = new Thread(this::dispatch, "submit-pipeline-events");
+		this.dispatcher.setDaemon(true);
+		this.dispatcher.start();
+		this.timeouts = Executors.newSingleThreadScheduledExecutor(task -> {
+			var thread = new Thread(task, "submit-pipeline-timeouts");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.timeouts.scheduleWithFixedDelay(this::expireOverdue, SWEEP_INTERVAL_MILLIS, SWEEP_INTERVAL_MILLIS,
+				TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @return the number of blocks in the channel's ledger, which is also the number of the next block
+	 */
+	private static long getLedgerHeight(final Network network) throws GatewayException {
+		var chainInfo = network.getContract("qscc").evaluateTransaction("GetChainInfo", network.getName());
+		try {
+			return BlockchainInfo.parseFrom(chainInfo).getHeight();
+		} catch (InvalidProtocolBufferException e) {
+			throw new UncheckedIOException("Invalid chain info for channel " + network.getName(), e);
+		}
+	}
+
+	/**
+	 * Endorses and submits a transaction, waiting first if maxInFlight transactions are already
+	 * waiting to be committed.
+	 *
+	 * @return a future completed when the transaction's block is received
+	 */
+	public CompletableFuture<Committed> submit(final String transactionName, final String... args)
+			throws InterruptedException, EndorseException, SubmitException {
+		inFlight.acquire();
+		Transaction transaction;
+		try {
+			transaction = contract.newProposal(transactionName)
+					.addArguments(args)
+					.build()
+					.endorse();
+		} catch (EndorseException | RuntimeException e) {
+			inFlight.release();
+			throw e;
+		}
+		return submitAcquired(transaction);
+	}
+
+	/**
+	 * Submits a transaction that has already been endorsed, waiting first if maxInFlight
+	 * transactions are already waiting to be committed.
+	 *
+	 * @return a future completed when the transaction's block is received
+	 */
+	public CompletableFuture<Committed> submit(final Transaction transaction) throws InterruptedException, SubmitException {
+		inFlight.acquire();
+		return submitAcquired(transaction);
+	}
+
+	private CompletableFuture<Committed> submitAcquired(final Transaction transaction) throws SubmitException {
+		var transactionId = transaction.getTransactionId();
+		var entry = new Pending(transaction.getResult(), System.nanoTime() + commitTimeoutNanos);
+		entry.future.whenComplete((committed, error) -> inFlight.release());
+		// Registered before submitting: the block can arrive before submitAsync returns.
+		pending.put(transactionId, entry);
+		if (closed || failure != null) {
+			fail(transactionId, entry);
+			return entry.future;
+		}
+		try {
+			entry.commit = transaction.submitAsync();
+		} catch (SubmitException | RuntimeException e) {
+			pending.remove(transactionId);
+			entry.future.completeExceptionally(e);
+			throw e;
+		}
+		return entry.future;
+	}
+
+	private void dispatch() {
+		try {
+			while (blocks.hasNext()) {
+				var block = blocks.next();
+				for (var transaction : block.getFilteredTransactionsList()) {
+					var entry = pending.remove(transaction.getTxid());
+					if (entry != null) {
+						entry.future.complete(new Committed(transaction.getTxid(), entry.result, block.getNumber(),
+								transaction.getTxValidationCode()));
+					}
+				}
+			}
+			failure = new IllegalStateException("Block event stream ended");
+		} catch (RuntimeException e) {
+			failure = closed ? new IllegalStateException("Submit pipeline closed", e) : e;
+		}
+		pending.forEach(this::fail);
+	}
+
+	/**
+	 * Hands the transactions whose deadline has passed over to a commit status call each.
+	 */
+	private void expireOverdue() {
+		var now = System.nanoTime();
+		pending.forEach((transactionId, entry) -> {
+			if (entry.commit != null && now - entry.deadlineNanos >= 0 && pending.remove(transactionId, entry)) {
+				Thread.startVirtualThread(() -> checkStatus(transactionId, entry));
+			}
+		});
+	}
+
+	/**
+	 * Completes a transaction from its commit status, bounded by the Gateway's commit status deadline.
+	 */
+	private static void checkStatus(final String transactionId, final Pending entry) {
+		try {
+			var status = entry.commit.getStatus();
+			entry.future.complete(new Committed(transactionId, entry.result, status.getBlockNumber(), status.getCode()));
+		} catch (CommitStatusException | RuntimeException e) {
+			entry.future.completeExceptionally(e);
+		}
+	}
+
+	private void fail(final String transactionId, final Pending entry) {
+		pending.remove(transactionId, entry);
+		entry.future.completeExceptionally(failure != null ? failure : new IllegalStateException("Submit pipeline closed"));
+	}
+
+	/**
+	 * @return the number of transactions submitted and not yet seen in a block
+	 */
+	public int getInFlight() {
+		return pending.size();
+	}
+
+	/**
+	 * Stops listening for blocks. Transactions still waiting for theirs fail.
+	 */
+	@Override
+	public void close() throws InterruptedException {
+		closed = true;
+		timeouts.shutdownNow();
+		blocks.close();
+		dispatcher.join();
+	}
+}
@@ -0,0 +1,113 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.samples.assettransfer;
+
+import java.time.Duration;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.owlike.genson.Genson;
+
+/**
+ * Throughput of the ORM operations behind the contract's transactions, against an
+ * {@link InMemoryChaincodeStub} holding one owner with the given number of assets. Each
+ * benchmark runs as its own transaction: a fresh EntityManager, a flush at the end and no
+ * commit, so the ledger is the same for every invocation.
+ *
+ * Run with {@code ./gradlew jmh}; the GC profiler adds the allocation rate to the report.
+ */
+public class EntityManagerBenchmark {
+
+    static final String OWNER = "owner1";
+    static final String OTHER_OWNER = "owner2";
+
+    @State(Scope.Benchmark)
+    public static class Ledger {
+
+        @Param({"10", "1000", "100000"})
+        int assets;
+
+        // Simulated shim-to-peer round trip, e.g. -p latencyMicros=200 to weigh the number of calls.
+        @Param({"0"})
+        int latencyMicros;
+
+        final Genson genson = new Genson();
+        final EntityRegistry registry = new EntityRegistry(genson)
+                .register(Asset.class)
+                .register(Owner.class)
+                .prewarm();
+        InMemoryChaincodeStub stub;
+        private int next;
+
+        @Setup(Level.Trial)
+        public void populate() {
+            stub = new InMemoryChaincodeStub();
+            stub.beginTransaction("setup");
+            EntityManager manager = new EntityManager(stub, registry, true);
+            manager.save(new Owner(OWNER, "Tomoko", "Smith"));
+            manager.save(new Owner(OTHER_OWNER, "Brad", "Jones"));
+            for (int i = 0; i < assets; i++) {
+                manager.save(new Asset(assetID(i), "blue", 5, OWNER, 300));
+            }
+            manager.flush();
+            stub.commit();
+            stub.setLatency(Duration.ofNanos(latencyMicros * 1000L));
+        }
+
+        EntityManager begin() {
+            stub.beginTransaction();
+            return new EntityManager(stub, registry, true);
+        }
+
+        String nextAssetID() {
+            next = (next + 1) % assets;
+            return assetID(next);
+        }
+
+        static String assetID(final int i) {
+            return String.format("asset%06d", i);
+        }
+    }
+
+    @Benchmark
+    public EntityManager save(final Ledger ledger) {
+        EntityManager manager = ledger.begin();
+        manager.save(new Asset("asset-new", "red", 10, OWNER, 500));
+        manager.flush();
+        return manager;
+    }
+
+    @Benchmark
+    public Asset loadAsset(final Ledger ledger) {
+        EntityManager manager = ledger.begin();
+        return manager.loadAsset(ledger.nextAssetID());
+    }
+
+    @Benchmark
+    public Asset setOwner(final Ledger ledger) {
+        EntityManager manager = ledger.begin();
+        Asset asset = manager.loadAsset(ledger.nextAssetID());
+        asset.setOwner(manager.loadOwner(OTHER_OWNER));
+        manager.flush();
+        return asset;
+    }
+
+    @Benchmark
+    public String getAssetsOfOwner(final Ledger ledger) {
+        EntityManager manager = ledger.begin();
+        Owner owner = manager.loadOwner(OWNER);
+        return JsonResponse.ofArray(ledger.genson, manager.loadRelated(Asset.class, owner));
+    }
+
+    @Benchmark
+    public String viewDB(final Ledger ledger) {
+        EntityManager manager = ledger.begin();
+        return manager.viewDB();
+    }
+}
@@ -9,33 +9,44 @@ import java.beans.PropertyChangeSupport;
 import org.hyperledger.fabric.contract.annotation.DataType;
 import org.hyperledger.fabric.contract.annotation.Property;
 
-import com.owlike.genson.annotation.JsonIgnore;
 import com.owlike.genson.annotation.JsonProperty;
+import com.owlike.genson.stream.ObjectWriter;
 
 @DataType()
-public class Asset {
+@Entity
+public class Asset implements EntityBase, JsonResponse.Writable {
 
     private EntityManager manager;
     private PropertyChangeSupport propertyChangeSupport;
+    @Override
     public void setEntityManager(EntityManager manager) {
         this.manager = manager;
     }
 
+    @Id
     @Property()
     private String assetID;
 
+    @Indexed
     @Property()
     private String color;
 
+    @Indexed
     @Property()
     private int size;
 
+    @Relation(target = Owner.class, storage = RelationStorage.EDGE, aggregated = true)
     @Property()
     private String ownerID;
 
+    @Summed
     @Property()
     private int appraisedValue;
 
+    @Version
+    @Property()
+    private long version;
+
     private transient Owner owner = null;
 
     public void setAssetID(String assetID) {
@@ -63,13 +74,11 @@ public class Asset {
     }
     public void setOwner(Owner newOwner) {
         if (ownerID != null && manager != null && !manager.AlreadyOwnedAsset(assetID, newOwner.getOwnerID())) {
-            Owner oldOwner = manager.loadOwner(ownerID);
-            oldOwner.removeAsset(this);
-            manager.save(oldOwner);
+            String oldValue = this.ownerID;
             this.ownerID = newOwner.getOwnerID();
+            this.owner = newOwner;
+            propertyChangeSupport.firePropertyChange("ownerID", oldValue, this.ownerID);
             manager.save(this);
-            newOwner.addAsset(this);
-            manager.save(newOwner);            
         }
     }
 
@@ -98,11 +107,47 @@ public class Asset {
         return this.appraisedValue;
     }
 
-    public Owner getOwner() {
+    @JsonProperty("version")
+    public long getVersion() {
+        return this.version;
+    }
+
+    @JsonProperty("version")
+    void setVersion(long version) {
+        this.version = version;
+    }
+
+    /**
+     * Loads the owner on first use; the owner is notified of this asset's changes from then on.
+     * Not a bean getter, so serializing an asset does not load its owner.
+     */
+    public Owner owner() {
         if (owner == null) {
             owner = manager.loadOwner(ownerID);
-        }        
-        return owner;       
+            addPropertyChangeListner(owner::handleAssetUpdate);
+        }
+        return owner;
+    }
+
+    /**
+     * Writes the same properties, under the same names, as the contract serializer does for an Asset.
+     */
+    @Override
+    public void writeJSON(ObjectWriter writer) {
+        writer.beginObject()
+                .writeString("assetID", assetID)
+                .writeString("color", color)
+                .writeNumber("size", size)
+                .writeString("ownerID", ownerID)
+                .writeNumber("appraisedValue", appraisedValue)
+                .writeNumber("version", version)
+                .endObject();
+    }
+
+    @Override
+    public boolean addChangeListener(PropertyChangeListener listener) {
+        propertyChangeSupport.addPropertyChangeListener(listener);
+        return true;
     }
 
     public void addPropertyChangeListner(PropertyChangeListener listener) {
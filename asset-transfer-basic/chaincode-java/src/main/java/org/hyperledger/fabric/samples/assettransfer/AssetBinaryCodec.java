@@ -0,0 +1,31 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.samples.assettransfer;
+
+public final class AssetBinaryCodec extends BinaryEntityCodec<Asset> {
+
+    public AssetBinaryCodec(EntityCodec<Asset> legacyCodec) {
+        super(legacyCodec);
+    }
+
+    @Override
+    protected void writeFields(Output out, Asset asset) {
+        out.writeString(asset.getAssetID());
+        out.writeString(asset.getColor());
+        out.writeInt(asset.getSize());
+        out.writeString(asset.getOwnerID());
+        out.writeInt(asset.getAppraisedValue());
+        out.writeLong(asset.getVersion());
+    }
+
+    @Override
+    protected Asset readFields(Input in) {
+        Asset asset = new Asset(in.readString(), in.readString(), in.readInt(), in.readString(), in.readInt());
+        // Values written before assets were versioned end here.
+        if (!in.isAtEnd()) {
+            asset.setVersion(in.readLong());
+        }
+        return asset;
+    }
+}
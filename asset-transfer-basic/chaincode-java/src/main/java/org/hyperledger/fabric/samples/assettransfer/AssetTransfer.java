@@ -3,6 +3,16 @@
  */
 package org.hyperledger.fabric.samples.assettransfer;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 import org.hyperledger.fabric.contract.Context;
 import org.hyperledger.fabric.contract.ContractInterface;
 import org.hyperledger.fabric.contract.annotation.Contact;
@@ -15,6 +25,7 @@ import org.hyperledger.fabric.shim.ChaincodeException;
 import org.hyperledger.fabric.shim.ChaincodeStub;
 
 import com.owlike.genson.Genson;
+import com.owlike.genson.stream.ObjectWriter;
 
 @Contract(
         name = "basic",
@@ -32,20 +43,84 @@ import com.owlike.genson.Genson;
 @Default
 public final class AssetTransfer implements ContractInterface {
 
-    private final Genson genson = new Genson();
+    // Shared by every transaction: building a Genson and its converters is far more
+    // expensive than anything a single transaction does with it.
+    private static final Genson GENSON = new Genson();
+
+    private static final EntityRegistry ENTITIES = new EntityRegistry(GENSON)
+            .register(Asset.class)
+            .register(Owner.class)
+            .prewarm();
+
+    private static final OrmMetrics METRICS = OrmMetrics.fromEnvironment();
+
+    // Transactions declared as EVALUATE, which are given a read-only EntityManager.
+    private static final Set<String> EVALUATE_TRANSACTIONS = transactionsOf(Transaction.TYPE.EVALUATE);
 
     private enum AssetTransferErrors {
         ASSET_NOT_FOUND,
         ASSET_ALREADY_EXISTS,
         OWNER_NOT_FOUND,
         OWNER_ALREADY_EXISTS,
-        OWNERSHHIP_CANNOT_TRANSFER
+        OWNERSHHIP_CANNOT_TRANSFER,
+        INVALID_EXPECTED_VERSION
     }
 
+    /**
+     * Transient data key under which clients may pass the version of the asset they read.
+     */
+    static final String EXPECTED_VERSION = "expectedVersion";
+
+    /**
+     * Transient data key under which clients may pass a {@link BulkBatch} payload instead of an argument.
+     */
+    static final String BATCH = "batch";
+
     @Override
     public Context createContext(final ChaincodeStub stub) {
-        return new EntityContext(stub, new EntityManager(stub));
-    }    
+        EntityManager manager = EVALUATE_TRANSACTIONS.contains(transactionName(stub))
+                ? EntityManager.readOnly(stub, ENTITIES)
+                : new EntityManager(stub, ENTITIES, true);
+        return new EntityContext(stub, manager);
+    }
+
+    /**
+     * @return the names of this contract's transactions declared with the given intent
+     */
+    private static Set<String> transactionsOf(final Transaction.TYPE intent) {
+        Set<String> names = new HashSet<>();
+        for (Method method : AssetTransfer.class.getMethods()) {
+            Transaction transaction = method.getAnnotation(Transaction.class);
+            if (transaction != null && transaction.intent() == intent) {
+                names.add(transaction.name().isEmpty() ? method.getName() : transaction.name());
+            }
+        }
+        return names;
+    }
+
+    @Override
+    public void beforeTransaction(final Context ctx) {
+        METRICS.started(transactionName(ctx.getStub()));
+    }
+
+    @Override
+    public void afterTransaction(final Context ctx, final Object result) {
+        EntityManager manager = ((EntityContext) ctx).getEntityManager();
+        manager.flush();
+        METRICS.record(transactionName(ctx.getStub()), manager.finishMetrics());
+    }
+
+    /**
+     * @return the invoked function without its contract name prefix
+     */
+    private static String transactionName(final ChaincodeStub stub) {
+        String function = stub.getFunction();
+        if (function == null) {
+            return "unknown";
+        }
+        return function.substring(function.lastIndexOf(':') + 1);
+    }
+
     /**
      * @param ctx 
      */
@@ -79,6 +154,68 @@ public final class AssetTransfer implements ContractInterface {
         return owner;
     }
 
+    /**
+     * Creates the owners and assets of a {@link BulkBatch}, passed as the argument or, when that is
+     * empty, under the transient {@value #BATCH} key. Nothing is written unless the whole batch is
+     * valid, and everything is written in the single flush at the end of the transaction: each owner
+     * document once, each asset with its ownership edge, and one statistics delta per owner.
+     * Every ID is checked with its own read, so the checks cost as much as the batch, whatever the
+     * size of the ledger, and do not conflict with concurrent writes of other assets.
+     * @return the number of owners and assets created
+     */
+    @Transaction(intent = Transaction.TYPE.SUBMIT)
+    public String BulkCreate(final EntityContext ctx, final String batch) {
+        EntityManager manager = ctx.getEntityManager();
+        BulkBatch bulk = batch == null || batch.isEmpty()
+                ? BulkBatch.parse(GENSON, transientBatch(ctx))
+                : BulkBatch.parse(GENSON, batch);
+
+        Set<String> ownerIDs = new HashSet<>();
+        for (Owner owner : bulk.getOwners()) {
+            ownerIDs.add(owner.getOwnerID());
+        }
+        Set<String> existingOwners = manager.existing(Owner.class, ownerIDs);
+        if (!existingOwners.isEmpty()) {
+            throw new ChaincodeException("OWNER ALREADY EXISTS: " + existingOwners.iterator().next(),
+                    AssetTransferErrors.OWNER_ALREADY_EXISTS.toString());
+        }
+        List<String> assetIDs = new ArrayList<>();
+        Set<String> referencedOwners = new HashSet<>();
+        for (Asset asset : bulk.getAssets()) {
+            assetIDs.add(asset.getAssetID());
+            if (!ownerIDs.contains(asset.getOwnerID())) {
+                referencedOwners.add(asset.getOwnerID());
+            }
+        }
+        Set<String> existingAssets = manager.existing(Asset.class, assetIDs);
+        if (!existingAssets.isEmpty()) {
+            throw new ChaincodeException("ASSET ALREADY EXISTS: " + existingAssets.iterator().next(),
+                    AssetTransferErrors.ASSET_ALREADY_EXISTS.toString());
+        }
+        referencedOwners.removeAll(manager.existing(Owner.class, referencedOwners));
+        if (!referencedOwners.isEmpty()) {
+            throw new ChaincodeException("OWNER DOES NOT EXIST: " + referencedOwners.iterator().next(),
+                    AssetTransferErrors.OWNER_NOT_FOUND.toString());
+        }
+
+        for (Owner owner : bulk.getOwners()) {
+            manager.save(owner);
+        }
+        for (Asset asset : bulk.getAssets()) {
+            manager.save(asset);
+        }
+        return "{\"owners\":" + bulk.getOwners().size() + ",\"assets\":" + bulk.getAssets().size() + "}";
+    }
+
+    private static byte[] transientBatch(final EntityContext ctx) {
+        Map<String, byte[]> transientData = ctx.getStub().getTransient();
+        byte[] batch = transientData == null ? null : transientData.get(BATCH);
+        if (batch == null || batch.length == 0) {
+            throw new ChaincodeException("NO BATCH GIVEN", BulkBatch.BATCH_ERRORS.INVALID_BATCH.toString());
+        }
+        return batch;
+    }
+
     @Transaction(intent = Transaction.TYPE.EVALUATE)
     public Owner ReadOwner(final EntityContext ctx, final String ownerID) {
         EntityManager manager = ctx.getEntityManager();
@@ -96,14 +233,49 @@ public final class AssetTransfer implements ContractInterface {
     @Transaction(intent = Transaction.TYPE.SUBMIT)
     public void TransferAsset(final EntityContext ctx, final String assetID, final String ownerID) {
         EntityManager manager = ctx.getEntityManager();
-        try {
-            Asset asset = manager.loadAsset(assetID);
-            Owner owner = manager.loadOwner(ownerID);
-            asset.setOwner(owner);
-            
-        } catch (Exception error) {
-            System.out.println(error);
-        }        
+        Asset asset = manager.loadAsset(assetID);
+        checkExpectedVersion(ctx, asset);
+        asset.setOwner(manager.loadOwner(ownerID));
+    }
+
+    /**
+     * Moves several assets to one owner. Each asset is read once, with a point read rather than a
+     * scan of every asset, so the transaction only conflicts with writes of the assets it moves.
+     * Each move only touches the asset and its ownership edge, so every owner involved is read at
+     * most once and never rewritten; its statistics change by one coalesced delta. An asset that
+     * cannot be transferred does not fail the others.
+     * @return one {"assetID","transferred"} object per requested asset, with the error message
+     * and payload of those that were not transferred
+     */
+    @Transaction(intent = Transaction.TYPE.SUBMIT)
+    public String TransferAssets(final EntityContext ctx, final String[] assetIDs, final String newOwnerID) {
+        EntityManager manager = ctx.getEntityManager();
+        Owner owner = manager.loadOwner(newOwnerID);
+        List<String> ids = Arrays.asList(assetIDs);
+        Set<String> existing = manager.existing(Asset.class, ids);
+
+        JsonResponse response = new JsonResponse(GENSON);
+        ObjectWriter writer = response.getWriter();
+        writer.beginArray();
+        for (String assetID : ids) {
+            writer.beginObject().writeString("assetID", assetID);
+            try {
+                if (!existing.contains(assetID)) {
+                    throw new ChaincodeException("ASSET DOES NOT EXIST", AssetTransferErrors.ASSET_NOT_FOUND.toString());
+                }
+                manager.loadAsset(assetID).setOwner(owner);
+                writer.writeBoolean("transferred", true);
+            } catch (ChaincodeException error) {
+                writer.writeBoolean("transferred", false)
+                        .writeString("error", error.getMessage());
+                if (error.getPayload() != null) {
+                    writer.writeString("code", new String(error.getPayload(), UTF_8));
+                }
+            }
+            writer.endObject();
+        }
+        writer.endArray();
+        return response.toJSON();
     }
 
     @Transaction(intent = Transaction.TYPE.SUBMIT)
@@ -111,6 +283,7 @@ public final class AssetTransfer implements ContractInterface {
                         final String ownerID, final int appraisedValue) {
         EntityManager manager = ctx.getEntityManager();
         Asset asset = manager.loadAsset(assetID);
+        checkExpectedVersion(ctx, asset);
         if (!asset.getOwnerID().equals(ownerID)) {
             throw new ChaincodeException("OWNERSHIP CANNOT BE TRANSFRRED", AssetTransferErrors.OWNERSHHIP_CANNOT_TRANSFER.toString());
         }
@@ -121,6 +294,19 @@ public final class AssetTransfer implements ContractInterface {
         manager.save(asset);  
     }
 
+    private static void checkExpectedVersion(final EntityContext ctx, final Asset asset) {
+        Map<String, byte[]> transientData = ctx.getStub().getTransient();
+        byte[] expectedVersion = transientData == null ? null : transientData.get(EXPECTED_VERSION);
+        if (expectedVersion == null) {
+            return;
+        }
+        try {
+            ctx.getEntityManager().checkVersion(asset, Long.parseLong(new String(expectedVersion, UTF_8)));
+        } catch (NumberFormatException error) {
+            throw new ChaincodeException("INVALID EXPECTED VERSION", AssetTransferErrors.INVALID_EXPECTED_VERSION.toString());
+        }
+    }
+
     @Transaction(intent = Transaction.TYPE.SUBMIT) 
     public void DeleteAsset(final EntityContext ctx, final String assetID) {
         EntityManager manager = ctx.getEntityManager();
@@ -131,25 +317,61 @@ public final class AssetTransfer implements ContractInterface {
     }
 
     @Transaction(intent = Transaction.TYPE.EVALUATE)
-    public Asset[] GetAssetsOfOwner(final EntityContext ctx, final String ownerID) {
+    public String GetAssetsOfOwner(final EntityContext ctx, final String ownerID) {
         EntityManager manager = ctx.getEntityManager();
         Owner owner = manager.loadOwner(ownerID);
-        String res = genson.serialize(owner.GetOwnedAssets());
-        Asset[] response = genson.deserialize(res,Asset[].class);
-        return response;
+        return JsonResponse.ofArray(GENSON, manager.loadRelated(Asset.class, owner));
+    }
+
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String FindAssets(final EntityContext ctx, final String field, final String value) {
+        EntityManager manager = ctx.getEntityManager();
+        return JsonResponse.ofArray(GENSON, manager.findBy(Asset.class, field, value));
+    }
+
+    /**
+     * Backfills the index keys, ownership edges and owner statistics of assets stored before they
+     * were kept. Submit once after upgrading, while no other asset transactions are running.
+     */
+    @Transaction(intent = Transaction.TYPE.SUBMIT)
+    public int ReindexAssets(final EntityContext ctx) {
+        EntityManager manager = ctx.getEntityManager();
+        return manager.reindex(Asset.class);
+    }
+
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String GetOwnerStats(final EntityContext ctx, final String ownerID) {
+        EntityManager manager = ctx.getEntityManager();
+        return JsonResponse.of(GENSON, manager.stats(Asset.class, manager.loadOwner(ownerID)));
+    }
+
+    /**
+     * Folds the owner's asset statistics deltas into one key; submit periodically for owners
+     * that receive many assets.
+     */
+    @Transaction(intent = Transaction.TYPE.SUBMIT)
+    public String CompactOwnerStats(final EntityContext ctx, final String ownerID) {
+        EntityManager manager = ctx.getEntityManager();
+        return JsonResponse.of(GENSON, manager.compactStats(Asset.class, manager.loadOwner(ownerID)));
     }
 
     @Transaction(intent = Transaction.TYPE.EVALUATE)
     public Owner GetOwnerOfAsset(final EntityContext ctx, final String assetID) {
         EntityManager manager = ctx.getEntityManager();
         Asset asset = manager.loadAsset(assetID);
-        return asset.getOwner();
+        return asset.owner();
     }
 
     @Transaction(intent = Transaction.TYPE.EVALUATE)
     public String ViewDB(final EntityContext ctx) {
         EntityManager manager = ctx.getEntityManager();
         return manager.viewDB();
+    }
+
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String ViewDBPage(final EntityContext ctx, final int pageSize, final String bookmark) {
+        EntityManager manager = ctx.getEntityManager();
+        return manager.viewDB(pageSize, bookmark);
     }   
 }
 
@@ -0,0 +1,144 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.samples.assettransfer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.ByteArrayOutputStream;
+
+import org.hyperledger.fabric.shim.ChaincodeException;
+
+/**
+ * Compact binary encoding: a version byte followed by the entity's fields, with
+ * integers as zig-zag varints and strings as length-prefixed UTF-8. Values that do
+ * not start with the version byte are legacy JSON and are decoded by the fallback codec,
+ * so existing ledger data keeps reading after an entity type switches codec.
+ */
+public abstract class BinaryEntityCodec<T> implements EntityCodec<T> {
+
+    static final byte VERSION_1 = 1;
+
+    private enum CODEC_ERRORS {
+        MALFORMED_VALUE
+    }
+
+    private final EntityCodec<T> legacyCodec;
+
+    protected BinaryEntityCodec(EntityCodec<T> legacyCodec) {
+        this.legacyCodec = legacyCodec;
+    }
+
+    protected abstract void writeFields(Output out, T entity);
+
+    protected abstract T readFields(Input in);
+
+    @Override
+    public final byte[] encode(T entity) {
+        Output out = new Output();
+        out.buffer.write(VERSION_1);
+        writeFields(out, entity);
+        return out.buffer.toByteArray();
+    }
+
+    @Override
+    public final T decode(byte[] data) {
+        if (data.length == 0 || data[0] != VERSION_1) {
+            return legacyCodec.decode(data);
+        }
+        return readFields(new Input(data, 1));
+    }
+
+    protected static final class Output {
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(64);
+
+        public void writeInt(int value) {
+            int zigZag = (value << 1) ^ (value >> 31);
+            while ((zigZag & ~0x7F) != 0) {
+                buffer.write((zigZag & 0x7F) | 0x80);
+                zigZag >>>= 7;
+            }
+            buffer.write(zigZag);
+        }
+
+        public void writeLong(long value) {
+            long zigZag = (value << 1) ^ (value >> 63);
+            while ((zigZag & ~0x7FL) != 0) {
+                buffer.write((int) (zigZag & 0x7F) | 0x80);
+                zigZag >>>= 7;
+            }
+            buffer.write((int) zigZag);
+        }
+
+        /**
+         * Writes -1 for null, otherwise the UTF-8 length followed by the bytes.
+         */
+        public void writeString(String value) {
+            if (value == null) {
+                writeInt(-1);
+                return;
+            }
+            byte[] bytes = value.getBytes(UTF_8);
+            writeInt(bytes.length);
+            buffer.write(bytes, 0, bytes.length);
+        }
+    }
+
+    protected static final class Input {
+        private final byte[] data;
+        private int position;
+
+        Input(byte[] data, int position) {
+            this.data = data;
+            this.position = position;
+        }
+
+        public int readInt() {
+            int zigZag = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                byte b = next();
+                zigZag |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return (zigZag >>> 1) ^ -(zigZag & 1);
+                }
+            }
+            throw new ChaincodeException("MALFORMED VARINT", CODEC_ERRORS.MALFORMED_VALUE.toString());
+        }
+
+        public long readLong() {
+            long zigZag = 0;
+            for (int shift = 0; shift < 70; shift += 7) {
+                byte b = next();
+                zigZag |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return (zigZag >>> 1) ^ -(zigZag & 1);
+                }
+            }
+            throw new ChaincodeException("MALFORMED VARINT", CODEC_ERRORS.MALFORMED_VALUE.toString());
+        }
+
+        public boolean isAtEnd() {
+            return position >= data.length;
+        }
+
+        public String readString() {
+            int length = readInt();
+            if (length < 0) {
+                return null;
+            }
+            if (length > data.length - position) {
+                throw new ChaincodeException("MALFORMED STRING", CODEC_ERRORS.MALFORMED_VALUE.toString());
+            }
+            String value = new String(data, position, length, UTF_8);
+            position += length;
+            return value;
+        }
+
+        private byte next() {
+            if (position >= data.length) {
+                throw new ChaincodeException("TRUNCATED VALUE", CODEC_ERRORS.MALFORMED_VALUE.toString());
+            }
+            return data[position++];
+        }
+    }
+}
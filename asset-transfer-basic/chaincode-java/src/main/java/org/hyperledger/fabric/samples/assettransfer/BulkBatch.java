@@ -0,0 +1,172 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.samples.assettransfer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.hyperledger.fabric.shim.ChaincodeException;
+
+import com.owlike.genson.Genson;
+import com.owlike.genson.JsonBindingException;
+import com.owlike.genson.stream.JsonStreamException;
+import com.owlike.genson.stream.ObjectReader;
+import com.owlike.genson.stream.ValueType;
+
+/**
+ * Owners and assets to create in one transaction, read from a payload of positional rows
+ * rather than named objects, to keep large batches small:
+ *
+ * <pre>
+ * {"owners":[["owner1","Tomoko","Smith"]],
+ *  "assets":[["asset1","blue",5,"owner1",300]]}
+ * </pre>
+ *
+ * Owner rows are ID, name and last name; asset rows are ID, color, size, owner ID and appraised value.
+ * Sizes and appraised values are whole numbers from 0 to {@link Integer#MAX_VALUE}.
+ */
+final class BulkBatch {
+
+    static final int MAX_SIZE = 1000;
+
+    enum BATCH_ERRORS {
+        INVALID_BATCH
+    }
+
+    private final List<Owner> owners = new ArrayList<>();
+    private final List<Asset> assets = new ArrayList<>();
+
+    List<Owner> getOwners() {
+        return owners;
+    }
+
+    List<Asset> getAssets() {
+        return assets;
+    }
+
+    static BulkBatch parse(Genson genson, String payload) {
+        return parse(genson, payload.getBytes(UTF_8));
+    }
+
+    /**
+     * Streams the payload row by row and checks that it is well formed: every ID is present
+     * and unique within the batch, and there are at most {@link #MAX_SIZE} rows.
+     * @throws ChaincodeException with an INVALID_BATCH payload otherwise
+     */
+    static BulkBatch parse(Genson genson, byte[] payload) {
+        BulkBatch batch = new BulkBatch();
+        try {
+            ObjectReader reader = genson.createReader(payload);
+            reader.beginObject();
+            while (reader.hasNext()) {
+                reader.next();
+                String name = reader.name();
+                if ("owners".equals(name)) {
+                    batch.readOwners(reader);
+                } else if ("assets".equals(name)) {
+                    batch.readAssets(reader);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (JsonStreamException | JsonBindingException | IllegalStateException error) {
+            throw invalid("MALFORMED BATCH: " + error.getMessage());
+        }
+        batch.validate();
+        return batch;
+    }
+
+    private void readOwners(ObjectReader reader) {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            reader.next();
+            reader.beginArray();
+            owners.add(new Owner(string(reader), string(reader), string(reader)));
+            reader.endArray();
+            checkSize();
+        }
+        reader.endArray();
+    }
+
+    private void readAssets(ObjectReader reader) {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            reader.next();
+            reader.beginArray();
+            assets.add(new Asset(string(reader), string(reader), number(reader, "SIZE"), string(reader),
+                    number(reader, "APPRAISED VALUE")));
+            reader.endArray();
+            checkSize();
+        }
+        reader.endArray();
+    }
+
+    private static String string(ObjectReader reader) {
+        if (!reader.hasNext()) {
+            throw invalid("MALFORMED BATCH: row is too short");
+        }
+        reader.next();
+        return reader.valueAsString();
+    }
+
+    private static int number(ObjectReader reader, String field) {
+        if (!reader.hasNext()) {
+            throw invalid("MALFORMED BATCH: row is too short");
+        }
+        ValueType type = reader.next();
+        String value = reader.valueAsString();
+        if (type != ValueType.INTEGER) {
+            throw invalid("INVALID " + field + " " + value);
+        }
+        int number;
+        try {
+            number = Integer.parseInt(value);
+        } catch (NumberFormatException error) {
+            throw invalid("INVALID " + field + " " + value);
+        }
+        if (number < 0) {
+            throw invalid("INVALID " + field + " " + value);
+        }
+        return number;
+    }
+
+    private void checkSize() {
+        if (owners.size() + assets.size() > MAX_SIZE) {
+            throw invalid("BATCH IS LARGER THAN " + MAX_SIZE + " ROWS");
+        }
+    }
+
+    private void validate() {
+        Set<String> ownerIDs = new HashSet<>();
+        for (Owner owner : owners) {
+            requireID(owner.getOwnerID(), "OWNER");
+            if (!ownerIDs.add(owner.getOwnerID())) {
+                throw invalid("DUPLICATE OWNER " + owner.getOwnerID());
+            }
+        }
+        Set<String> assetIDs = new HashSet<>();
+        for (Asset asset : assets) {
+            requireID(asset.getAssetID(), "ASSET");
+            requireID(asset.getOwnerID(), "ASSET OWNER");
+            if (!assetIDs.add(asset.getAssetID())) {
+                throw invalid("DUPLICATE ASSET " + asset.getAssetID());
+            }
+        }
+    }
+
+    private static void requireID(String id, String kind) {
+        if (id == null || id.isEmpty()) {
+            throw invalid("MISSING " + kind + " ID");
+        }
+    }
+
+    private static ChaincodeException invalid(String message) {
+        return new ChaincodeException(message, BATCH_ERRORS.INVALID_BATCH.toString());
+    }
+}
@@ -0,0 +1,28 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.samples.assettransfer;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a class that EntityManager can persist. The class needs exactly one {@link Id} field.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Entity {
+
+    /**
+     * Object type used for the entity's composite keys. Defaults to the simple class name.
+     */
+    String prefix() default "";
+
+    /**
+     * Codec used to store the entity. Binary codecs are given a JSON codec to read legacy values.
+     */
+    @SuppressWarnings("rawtypes")
+    Class<? extends EntityCodec> codec() default JsonEntityCodec.class;
+}
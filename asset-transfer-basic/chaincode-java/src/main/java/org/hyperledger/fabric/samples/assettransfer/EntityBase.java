@@ -1,10 +1,33 @@
 package org.hyperledger.fabric.samples.assettransfer;
 
+import java.beans.PropertyChangeListener;
+
 /**
  * EntityBase
  */
 public interface EntityBase {
 
     public void setEntityManager(EntityManager entityManager);
-    
+
+    /**
+     * Called by EntityManager after the entity has been decoded and put in the identity map.
+     */
+    default void afterLoad() {
+    }
+
+    /**
+     * Called by EntityManager at the start of save(), so the entity can apply pending changes
+     * to related entities.
+     */
+    default void beforeSave() {
+    }
+
+    /**
+     * Registers a listener for changes to persistent properties. Changes to {@link Relation}
+     * fields must be reported under the field name.
+     * @return false if the entity does not report its changes, in which case EntityManager writes it on every save
+     */
+    default boolean addChangeListener(PropertyChangeListener listener) {
+        return false;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,15 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.samples.assettransfer;
+
+/**
+ * Converts an entity to and from the bytes stored in the world state.
+ * EntityManager holds one codec per entity type.
+ */
+public interface EntityCodec<T> {
+
+    byte[] encode(T entity);
+
+    T decode(byte[] data);
+}
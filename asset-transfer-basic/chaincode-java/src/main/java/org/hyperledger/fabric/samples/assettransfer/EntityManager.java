@@ -3,159 +3,1062 @@
  */
 package org.hyperledger.fabric.samples.assettransfer;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 
 import org.hyperledger.fabric.contract.annotation.DataType;
+import org.hyperledger.fabric.protos.peer.ChaincodeShim.QueryResponseMetadata;
 import org.hyperledger.fabric.shim.ChaincodeException;
 import org.hyperledger.fabric.shim.ChaincodeStub;
 import org.hyperledger.fabric.shim.ledger.CompositeKey;
 import org.hyperledger.fabric.shim.ledger.KeyValue;
 import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
 
 import com.owlike.genson.Genson;
+import com.owlike.genson.stream.ObjectWriter;
 
 @DataType
 public final class EntityManager {
-    Genson genson = new Genson();
     ChaincodeStub stub;
 
     private enum LOADING_ERRORS {
-        ASSET_NOT_FOUND,
-        OWNER_NOT_FOUND,
         OWNER_ALREADY_OWNS_ASSET,
-        OBJECT_TYPE_NOT_SUPPORTED
+        OBJECT_TYPE_NOT_SUPPORTED,
+        FIELD_NOT_INDEXED,
+        VERSION_CONFLICT,
+        READ_ONLY
     }
 
-    private Map<String, Asset> assetCache;
-    private Map<String, Owner> ownerCache;
-    
+    // Index keys carry all their information in the key; the value only has to be non-empty,
+    // since an empty value reads back as a deleted key.
+    private static final byte[] INDEX_ENTRY = {0};
+
+    private final EntityRegistry registry;
+    private final Genson genson;
+    private final IdentityMap identityMap;
+    private final TransactionMetrics metrics = new TransactionMetrics();
+
+    // Unit of work: when writeBehind is set, save() and delete() only record
+    // the change and flush() writes every changed key exactly once.
+    private final boolean writeBehind;
+    private final Map<String, Object> pendingWrites;
+    private final Set<String> pendingDeletes;
+
+    // Set for evaluate transactions: loaded entities are not tracked for saving, and any write
+    // is rejected.
+    private final boolean readOnly;
+
+    // Indexed field values as last loaded or saved, per entity key, so that a save only
+    // rewrites the index keys of fields that changed and removes the stale ones.
+    private final Map<String, String[]> indexedValues;
+
+    // Foreign keys as last loaded or saved, per entity key, so that a save can move a relation
+    // away from its previous target.
+    private final Map<String, String[]> foreignKeys;
+
+    // Names of the properties changed since the entity was last loaded or saved, for entities
+    // that report their changes; an entity with an empty set is not written again.
+    private final Map<String, Set<String>> dirtyFields;
+
+    // Keys whose @Version has been incremented in this transaction.
+    private final Set<String> versioned;
+
+    // What each entity adds to the statistics of its aggregated relations' targets, as last
+    // loaded or saved, and this transaction's delta for each target, by delta key.
+    private final Map<String, long[]> contributions;
+    private final Map<String, long[]> pendingDeltas;
+
+    // Fetch types set for this transaction, overriding those of the @Relation annotations.
+    private final Map<EntityMetadata.RelationMetadata, FetchType> fetchTypes;
 
     void save(Object obj) {
+        requireWritable();
         if (obj == null) {
             throw new ChaincodeException("Invalid object or object class", LOADING_ERRORS.OBJECT_TYPE_NOT_SUPPORTED.toString());
         }
-        CompositeKey objectKey = stub.createCompositeKey(obj.getClass().getSimpleName(), getObjectID(obj));
-        String objJSON = genson.serialize(obj);
-        if (obj.getClass() == Asset.class) {
-            this.assetCache.put(getObjectID(obj), (Asset) obj);
-            String ownerID = ((Asset) obj).getOwnerID();
-            Owner owner = loadOwner(ownerID);
-            ArrayList<String> ownedAssetIDList = owner.getMyAssetIDCollection();
-            if (!ownedAssetIDList.contains(getObjectID(obj))) {
-                owner.addAsset((Asset) obj);
+        EntityMetadata<?> metadata = metadataFor(obj.getClass());
+        attach(obj);
+        if (obj instanceof EntityBase) {
+            ((EntityBase) obj).beforeSave();
+        }
+        String objectID = metadata.idOf(obj);
+        String objectKey = keyOf(metadata, objectID);
+        Set<String> dirty = identityMap.get(objectKey, Object.class) == obj ? dirtyFields.get(objectKey) : null;
+        if (dirty != null && dirty.isEmpty()) {
+            return;
+        }
+        identityMap.put(objectKey, obj);
+        if (metadata.isVersioned() && versioned.add(objectKey)) {
+            metadata.setVersion(obj, metadata.versionOf(obj) + 1);
+        }
+        updateStats(metadata, objectKey, obj);
+        updateRelations(metadata, objectKey, objectID, obj, dirty);
+        updateIndexes(metadata, objectKey, objectID, obj);
+        writeKey(objectKey, obj);
+        if (dirty != null) {
+            dirty.clear();
+        } else {
+            track(objectKey, obj);
+        }
+    }
+
+    /**
+     * Starts recording the properties changed on the instance mapped to the key.
+     */
+    private void track(String key, Object obj) {
+        dirtyFields.remove(key);
+        if (obj instanceof EntityBase) {
+            Set<String> changed = new HashSet<>();
+            if (((EntityBase) obj).addChangeListener(event -> changed.add(event.getPropertyName()))) {
+                dirtyFields.put(key, changed);
             }
-            save(owner);
-        } else if (obj.getClass() == Owner.class) {
-            this.ownerCache.put(getObjectID(obj), (Owner) obj);
         }
-        stub.putStringState(objectKey.toString(), objJSON);
-        
     }
-    private String getObjectID(Object obj) {
-        if (obj.getClass() == Asset.class) {
-            ((Asset) obj).setEntityManager(this);
-            return ((Asset) obj).getAssetID();
-        } else if (obj.getClass() == Owner.class) {
-            ((Owner) obj).setEntityManager(this);
-            return ((Owner) obj).getOwnerID();
+
+    /**
+     * Rejects the transaction if the entity's {@link Version} is not the one the client read.
+     * Call it before making any change, so a stale request fails at endorsement without writes.
+     * @throws ChaincodeException with a VERSION_CONFLICT payload
+     */
+    public void checkVersion(Object entity, long expectedVersion) {
+        EntityMetadata<?> metadata = metadataFor(entity.getClass());
+        if (!metadata.isVersioned()) {
+            throw new ChaincodeException(metadata.getPrefix() + " has no @Version field", LOADING_ERRORS.OBJECT_TYPE_NOT_SUPPORTED.toString());
+        }
+        long version = metadata.versionOf(entity);
+        if (version != expectedVersion) {
+            throw new ChaincodeException("VERSION CONFLICT: expected " + expectedVersion + " but found " + version,
+                    LOADING_ERRORS.VERSION_CONFLICT.toString());
         }
-        throw new ChaincodeException("Unsupported object type", LOADING_ERRORS.OBJECT_TYPE_NOT_SUPPORTED.toString());
     }
 
-    public Asset loadAsset(String assetID) {
-        if (this.assetCache.containsKey(assetID)) {
-            Asset asset = this.assetCache.get(assetID);
-            asset.setEntityManager(this);
-            return asset;
+    /**
+     * @return true if the entity has changes that have not been saved, or does not report its changes
+     */
+    public boolean isDirty(Object entity) {
+        EntityMetadata<?> metadata = metadataFor(entity.getClass());
+        Set<String> dirty = dirtyFields.get(keyOf(metadata, metadata.idOf(entity)));
+        return dirty == null || !dirty.isEmpty();
+    }
+
+    private void updateRelations(EntityMetadata<?> metadata, String key, String id, Object obj, Set<String> dirty) {
+        List<EntityMetadata.RelationMetadata> relations = metadata.getRelations();
+        if (relations.isEmpty()) {
+            return;
+        }
+        String[] previous = foreignKeys.get(key);
+        String[] current = new String[relations.size()];
+        for (int i = 0; i < current.length; i++) {
+            EntityMetadata.RelationMetadata relation = relations.get(i);
+            current[i] = relation.foreignKey(obj);
+            if (previous != null && dirty != null && !dirty.contains(relation.getField())) {
+                continue;
+            }
+            String old = previous == null ? null : previous[i];
+            boolean moved = !Objects.equals(old, current[i]);
+            if (relation.isEdge()) {
+                if (previous != null && !moved) {
+                    continue;
+                }
+                if (current[i] != null) {
+                    load(relation.getTarget(), current[i]);
+                }
+                if (old != null) {
+                    deleteKey(edgeKeyOf(relation, old, id));
+                }
+                if (current[i] != null) {
+                    writeKey(edgeKeyOf(relation, current[i], id), INDEX_ENTRY);
+                }
+                continue;
+            }
+            if (moved && old != null) {
+                Object oldTarget = find(metadataFor(relation.getTarget()), old);
+                if (oldTarget != null) {
+                    relation.inverseIDs(oldTarget).remove(id);
+                    save(oldTarget);
+                }
+            }
+            Object target = load(relation.getTarget(), current[i]);
+            List<String> inverseIDs = relation.inverseIDs(target);
+            if (!inverseIDs.contains(id)) {
+                inverseIDs.add(id);
+            }
+            save(target);
+        }
+        foreignKeys.put(key, current);
+    }
+
+    /**
+     * Moves the entity's contribution from the targets it was counted under to its current
+     * targets, or only removes it when obj is null because the entity is being deleted.
+     */
+    private void updateStats(EntityMetadata<?> metadata, String key, Object obj) {
+        if (!metadata.isAggregated()) {
+            return;
+        }
+        List<EntityMetadata.RelationMetadata> relations = metadata.getRelations();
+        long[] previous = contributions.get(key);
+        String[] previousTargets = foreignKeys.get(key);
+        long[] current = obj == null ? null : metadata.contributionOf(obj);
+        for (int i = 0; i < relations.size(); i++) {
+            EntityMetadata.RelationMetadata relation = relations.get(i);
+            if (!relation.isAggregated()) {
+                continue;
+            }
+            if (previous != null && previousTargets != null && previousTargets[i] != null) {
+                addDelta(relation, previousTargets[i], previous, -1);
+            }
+            String target = obj == null ? null : relation.foreignKey(obj);
+            if (target != null) {
+                addDelta(relation, target, current, 1);
+            }
+        }
+        if (current == null) {
+            contributions.remove(key);
+        } else {
+            contributions.put(key, current);
+        }
+    }
+
+    private void addDelta(EntityMetadata.RelationMetadata relation, String targetID, long[] contribution, int sign) {
+        String deltaKey = deltaKeyOf(relation, targetID);
+        long[] delta = pendingDeltas.computeIfAbsent(deltaKey, k -> new long[contribution.length]);
+        boolean zero = true;
+        for (int i = 0; i < delta.length; i++) {
+            delta[i] += sign * contribution[i];
+            zero &= delta[i] == 0;
+        }
+        writeDelta(deltaKey, delta, zero);
+    }
+
+    private void writeDelta(String deltaKey, long[] delta, boolean zero) {
+        if (!zero) {
+            writeKey(deltaKey, genson.serialize(delta).getBytes(UTF_8));
+        } else if (writeBehind) {
+            pendingWrites.remove(deltaKey);
+        } else {
+            deleteState(deltaKey);
+        }
+    }
+
+    private String deltaKeyOf(EntityMetadata.RelationMetadata relation, String targetID) {
+        return stub.createCompositeKey(relation.getStatsType(), targetID, stub.getTxId()).toString();
+    }
+
+    /**
+     * Sums the target's delta keys, from the ledger and from this transaction, into totals.
+     * @return the ledger keys of the deltas written by earlier transactions
+     */
+    private List<String> sumDeltas(EntityMetadata.RelationMetadata relation, String targetID, long[] totals) {
+        String ownKey = deltaKeyOf(relation, targetID);
+        List<String> keys = new ArrayList<>();
+        QueryResultsIterator<KeyValue> results = scan(
+                stub.createCompositeKey(relation.getStatsType(), targetID));
+        try {
+            for (KeyValue result : rows(results)) {
+                if (!result.getKey().equals(ownKey)) {
+                    keys.add(result.getKey());
+                    add(totals, genson.deserialize(result.getStringValue(), long[].class));
+                }
+            }
+        } finally {
+            close(results);
+        }
+        long[] own = pendingDeltas.get(ownKey);
+        if (own != null) {
+            add(totals, own);
+        }
+        return keys;
+    }
+
+    private static void add(long[] totals, long[] delta) {
+        for (int i = 0; i < Math.min(totals.length, delta.length); i++) {
+            totals[i] += delta[i];
+        }
+    }
+
+    private EntityMetadata.RelationMetadata aggregatedRelation(EntityMetadata<?> source, Object target) {
+        EntityMetadata.RelationMetadata relation = relationTo(source, target.getClass());
+        if (!relation.isAggregated()) {
+            throw new ChaincodeException("No statistics kept from " + source.getPrefix() + " to " + target.getClass().getSimpleName(),
+                    LOADING_ERRORS.OBJECT_TYPE_NOT_SUPPORTED.toString());
+        }
+        return relation;
+    }
+
+    private static RelationStats statsOf(EntityMetadata<?> source, String targetID, long[] totals) {
+        List<String> fields = new ArrayList<>();
+        for (EntityMetadata.SumMetadata sum : source.getSums()) {
+            fields.add(sum.getField());
+        }
+        return new RelationStats(targetID, fields, totals);
+    }
+
+    /**
+     * Reads the statistics of an aggregated relation for one target by scanning its delta keys.
+     * Never writes, so readers cannot conflict with the transactions adding deltas.
+     */
+    public RelationStats stats(Class<?> source, Object target) {
+        EntityMetadata<?> sourceMetadata = metadataFor(source);
+        EntityMetadata.RelationMetadata relation = aggregatedRelation(sourceMetadata, target);
+        String targetID = idOf(target);
+        long[] totals = new long[sourceMetadata.getSums().size() + 1];
+        sumDeltas(relation, targetID, totals);
+        return statsOf(sourceMetadata, targetID, totals);
+    }
+
+    /**
+     * Replaces the target's delta keys with a single one holding their sum, to keep reads short.
+     * Meant to be submitted periodically; it conflicts with transactions that add a delta for the
+     * same target concurrently, so it is the compaction that gets retried, not the writers.
+     */
+    public RelationStats compactStats(Class<?> source, Object target) {
+        EntityMetadata<?> sourceMetadata = metadataFor(source);
+        EntityMetadata.RelationMetadata relation = aggregatedRelation(sourceMetadata, target);
+        String targetID = idOf(target);
+        long[] totals = new long[sourceMetadata.getSums().size() + 1];
+        for (String key : sumDeltas(relation, targetID, totals)) {
+            deleteKey(key);
+        }
+        String ownKey = deltaKeyOf(relation, targetID);
+        long[] compacted = totals.clone();
+        pendingDeltas.put(ownKey, compacted);
+        boolean zero = true;
+        for (long total : compacted) {
+            zero &= total == 0;
+        }
+        writeDelta(ownKey, compacted, zero);
+        return statsOf(sourceMetadata, targetID, totals);
+    }
+
+    private String edgeKeyOf(EntityMetadata.RelationMetadata relation, String targetID, String id) {
+        return stub.createCompositeKey(relation.getEdgeType(), targetID, id).toString();
+    }
+
+    private void updateIndexes(EntityMetadata<?> metadata, String key, String id, Object obj) {
+        List<EntityMetadata.IndexMetadata> indexes = metadata.getIndexes();
+        if (indexes.isEmpty()) {
+            return;
+        }
+        String[] previous = indexedValues.get(key);
+        String[] current = new String[indexes.size()];
+        for (int i = 0; i < current.length; i++) {
+            EntityMetadata.IndexMetadata index = indexes.get(i);
+            current[i] = index.valueOf(obj);
+            String old = previous == null ? null : previous[i];
+            if (previous != null && Objects.equals(old, current[i])) {
+                continue;
+            }
+            if (old != null) {
+                deleteKey(indexKeyOf(index, old, id));
+            }
+            if (current[i] != null) {
+                writeKey(indexKeyOf(index, current[i], id), INDEX_ENTRY);
+            }
+        }
+        indexedValues.put(key, current);
+    }
+
+    private void removeIndexes(EntityMetadata<?> metadata, String key, String id, Object obj) {
+        List<EntityMetadata.IndexMetadata> indexes = metadata.getIndexes();
+        String[] previous = indexedValues.remove(key);
+        for (int i = 0; i < indexes.size(); i++) {
+            String value = previous == null ? indexes.get(i).valueOf(obj) : previous[i];
+            if (value != null) {
+                deleteKey(indexKeyOf(indexes.get(i), value, id));
+            }
+        }
+    }
+
+    private String indexKeyOf(EntityMetadata.IndexMetadata index, String value, String id) {
+        return stub.createCompositeKey(index.getObjectType(), value, id).toString();
+    }
+
+    private void writeKey(String key, Object obj) {
+        requireWritable();
+        if (writeBehind) {
+            pendingDeletes.remove(key);
+            pendingWrites.put(key, obj);
+        } else {
+            writeState(key, encode(obj));
+        }
+    }
+
+    private void deleteKey(String key) {
+        requireWritable();
+        if (writeBehind) {
+            pendingWrites.remove(key);
+            pendingDeletes.add(key);
+        } else {
+            deleteState(key);
+        }
+    }
+
+    /**
+     * @throws ChaincodeException with a READ_ONLY payload if this manager was created by {@link #readOnly}
+     */
+    private void requireWritable() {
+        if (readOnly) {
+            throw new ChaincodeException("READ ONLY TRANSACTION", LOADING_ERRORS.READ_ONLY.toString());
+        }
+    }
+
+    /**
+     * @return true if this manager was created by {@link #readOnly}
+     */
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    /**
+     * Writes every entity saved or deleted since the last flush, once per key.
+     * Called at the end of the transaction; a no-op when not in write-behind mode.
+     */
+    public void flush() {
+        for (Map.Entry<String, Object> pending : pendingWrites.entrySet()) {
+            writeState(pending.getKey(), encode(pending.getValue()));
+        }
+        for (String key : pendingDeletes) {
+            deleteState(key);
+        }
+        pendingWrites.clear();
+        pendingDeletes.clear();
+    }
+
+    private <T> EntityMetadata<T> metadataFor(Class<T> type) {
+        EntityMetadata<T> metadata = registry.metadataFor(type);
+        if (metadata == null) {
+            throw new ChaincodeException("Unsupported object type", LOADING_ERRORS.OBJECT_TYPE_NOT_SUPPORTED.toString());
+        }
+        return metadata;
+    }
+
+    @SuppressWarnings("unchecked")
+    private byte[] encode(Object obj) {
+        if (obj instanceof byte[]) {
+            return (byte[]) obj;
+        }
+        long start = System.nanoTime();
+        byte[] data = metadataFor((Class<Object>) obj.getClass()).getCodec().encode(obj);
+        metrics.serialized(start);
+        return data;
+    }
+
+    private <T> T decode(EntityCodec<T> codec, byte[] data) {
+        long start = System.nanoTime();
+        T entity = codec.decode(data);
+        metrics.serialized(start);
+        return entity;
+    }
+
+    private byte[] readState(String key) {
+        byte[] value = stub.getState(key);
+        metrics.read(value);
+        return value;
+    }
+
+    private void writeState(String key, byte[] value) {
+        stub.putState(key, value);
+        metrics.write(value);
+    }
+
+    private void deleteState(String key) {
+        stub.delState(key);
+        metrics.delete();
+    }
+
+    private QueryResultsIterator<KeyValue> scan(String objectType) {
+        metrics.scan();
+        return stub.getStateByPartialCompositeKey(objectType);
+    }
+
+    private QueryResultsIterator<KeyValue> scan(CompositeKey partialKey) {
+        metrics.scan();
+        return stub.getStateByPartialCompositeKey(partialKey);
+    }
+
+    /**
+     * Counts the rows of a scan as they are read.
+     */
+    private Iterable<KeyValue> rows(Iterable<KeyValue> results) {
+        return () -> new Iterator<KeyValue>() {
+            private final Iterator<KeyValue> rows = results.iterator();
+
+            @Override
+            public boolean hasNext() {
+                return rows.hasNext();
+            }
+
+            @Override
+            public KeyValue next() {
+                KeyValue row = rows.next();
+                metrics.scanRow(row.getValue());
+                return row;
+            }
+        };
+    }
+
+    String idOf(Object entity) {
+        return metadataFor(entity.getClass()).idOf(entity);
+    }
+
+    private String keyOf(EntityMetadata<?> metadata, String id) {
+        return stub.createCompositeKey(metadata.getPrefix(), id).toString();
+    }
+
+    private void attach(Object obj) {
+        if (obj instanceof EntityBase) {
+            ((EntityBase) obj).setEntityManager(this);
         }
-        CompositeKey assetKey = stub.createCompositeKey(Asset.class.getSimpleName(), assetID);
-        String assetJSON = stub.getStringState(assetKey.toString());
-        if (assetJSON.isEmpty()) {
-            throw new ChaincodeException("ASSET DOES NOT EXIST", LOADING_ERRORS.ASSET_NOT_FOUND.toString());
+    }
+
+    /**
+     * Loads an entity of any registered type.
+     * @throws ChaincodeException if it does not exist
+     */
+    public <T> T load(Class<T> type, String id) {
+        EntityMetadata<T> metadata = metadataFor(type);
+        T entity = find(metadata, id);
+        if (entity == null) {
+            throw new ChaincodeException(metadata.getNotFoundMessage(), metadata.getNotFoundError());
         }
-        Asset asset = genson.deserialize(assetJSON,Asset.class);
-        asset.setEntityManager(this);
-        asset.addPropertyChangeListner(asset.getOwner():: handleAssetUpdate);
-        return asset;
+        return entity;
+    }
+
+    public boolean exists(Class<?> type, String id) {
+        return find(metadataFor(type), id) != null;
+    }
+
+    public Asset loadAsset(String assetID) {
+        return load(Asset.class, assetID);
     }
 
     public Owner loadOwner(String ownerID) {
-        if (this.ownerCache.containsKey(ownerID)) {
-            Owner owner = this.ownerCache.get(ownerID);
-            owner.setEntityManager(this);
-            return owner;
+        return load(Owner.class, ownerID);
+    }
+
+    /**
+     * Reads through the identity map, so each entity is fetched at most once per transaction.
+     * @return the entity, or null if it does not exist
+     */
+    private <T> T find(EntityMetadata<T> metadata, String id) {
+        String key = keyOf(metadata, id);
+        if (identityMap.isKnown(key)) {
+            return identityMap.get(key, metadata.getType());
+        }
+        byte[] data = readState(key);
+        if (data == null || data.length == 0) {
+            identityMap.markAbsent(key);
+            return null;
+        }
+        T entity = decode(metadata, key, data);
+        fetchRelations(metadata, Collections.singletonList(entity), false);
+        return entity;
+    }
+
+    private <T> T decode(EntityMetadata<T> metadata, String key, byte[] data) {
+        T entity = decode(metadata.getCodec(), data);
+        attach(entity);
+        identityMap.put(key, entity);
+        if (readOnly) {
+            // What is recorded below only serves later saves.
+            return entity;
+        }
+        List<EntityMetadata.RelationMetadata> relations = metadata.getRelations();
+        if (!relations.isEmpty()) {
+            String[] values = new String[relations.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = relations.get(i).foreignKey(entity);
+            }
+            foreignKeys.put(key, values);
+        }
+        List<EntityMetadata.IndexMetadata> indexes = metadata.getIndexes();
+        if (!indexes.isEmpty()) {
+            String[] values = new String[indexes.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = indexes.get(i).valueOf(entity);
+            }
+            indexedValues.put(key, values);
+        }
+        if (metadata.isAggregated()) {
+            contributions.put(key, metadata.contributionOf(entity));
+        }
+        track(key, entity);
+        if (entity instanceof EntityBase) {
+            ((EntityBase) entity).afterLoad();
+        }
+        return entity;
+    }
+
+    /**
+     * Loads several entities, reading each one that is not in the identity map exactly once.
+     * This is not a batch read: the shim has no multi-key read, so every entity that is missing
+     * still costs one GET_STATE round trip, as loading it on its own would. What is saved are the
+     * reads of IDs repeated in the request or already loaded in this transaction, and of relation
+     * targets shared by several of the entities, which are read once.
+     * @return the entities in the order of the requested IDs
+     * @throws ChaincodeException if any of them does not exist
+     */
+    public <T> List<T> loadAll(Class<T> type, Collection<String> ids) {
+        EntityMetadata<T> metadata = metadataFor(type);
+        List<String> keys = prefetch(metadata, ids);
+        List<T> entities = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            T entity = identityMap.get(key, type);
+            if (entity == null) {
+                throw new ChaincodeException(metadata.getNotFoundMessage(), metadata.getNotFoundError());
+            }
+            entities.add(entity);
+        }
+        return entities;
+    }
+
+    /**
+     * Checks several IDs with the same reads as {@link #loadAll}, so the entities that do exist
+     * are already in the identity map afterwards.
+     * @return the IDs that exist, in request order
+     */
+    public Set<String> existing(Class<?> type, Collection<String> ids) {
+        EntityMetadata<?> metadata = metadataFor(type);
+        List<String> keys = prefetch(metadata, ids);
+        Set<String> found = new LinkedHashSet<>();
+        Iterator<String> id = ids.iterator();
+        for (String key : keys) {
+            String next = id.next();
+            if (identityMap.get(key, type) != null) {
+                found.add(next);
+            }
+        }
+        return found;
+    }
+
+    public List<Asset> loadAssets(Collection<String> assetIDs) {
+        return loadAll(Asset.class, assetIDs);
+    }
+
+    public List<Owner> loadOwners(Collection<String> ownerIDs) {
+        return loadAll(Owner.class, ownerIDs);
+    }
+
+    /**
+     * Brings every requested key into the identity map, reading each missing key once, in order.
+     * Entity keys are composite, which getStateByRange rejects, so the only range read left would
+     * be a partial composite key scan of the whole object type: its cost would grow with the
+     * ledger instead of the request, it would conflict with every concurrent write of the type,
+     * and a result cut short by the peer's query limit would make existing keys look absent.
+     * @return the ledger keys in request order
+     */
+    private List<String> prefetch(EntityMetadata<?> metadata, Collection<String> ids) {
+        List<String> keys = new ArrayList<>(ids.size());
+        Set<String> missing = new LinkedHashSet<>();
+        for (String id : ids) {
+            String key = keyOf(metadata, id);
+            keys.add(key);
+            if (!identityMap.isKnown(key)) {
+                missing.add(key);
+            }
+        }
+        List<Object> loaded = new ArrayList<>(missing.size());
+        for (String key : missing) {
+            byte[] value = readState(key);
+            if (value == null || value.length == 0) {
+                identityMap.markAbsent(key);
+            } else {
+                loaded.add(decode(metadata, key, value));
+            }
+        }
+        fetchRelations(metadata, loaded, true);
+        return keys;
+    }
+
+    /**
+     * Loads the targets of the entities' EAGER relations, and of their BATCH relations when the
+     * entities were loaded together, with one prefetch per relation. LAZY targets are left to
+     * whoever asks for them.
+     */
+    private void fetchRelations(EntityMetadata<?> metadata, List<?> entities, boolean together) {
+        if (entities.isEmpty()) {
+            return;
+        }
+        for (EntityMetadata.RelationMetadata relation : metadata.getRelations()) {
+            FetchType fetch = fetchTypes.getOrDefault(relation, relation.getFetch());
+            if (fetch == FetchType.LAZY || fetch == FetchType.BATCH && !together) {
+                continue;
+            }
+            Set<String> ids = new LinkedHashSet<>();
+            for (Object entity : entities) {
+                String id = relation.foreignKey(entity);
+                if (id != null) {
+                    ids.add(id);
+                }
+            }
+            prefetch(metadataFor(relation.getTarget()), ids);
+        }
+    }
+
+    private static void close(AutoCloseable results) {
+        try {
+            results.close();
+        } catch (Exception error) {
+            throw new ChaincodeException(error);
+        }
+    }
+
+    /**
+     * Lists the IDs of the entities of the source type whose {@link Relation} points at the target.
+     * Edge relations are read with a partial composite key scan of the target's edges; in
+     * write-behind mode edges saved or deleted earlier in the transaction are taken into account.
+     */
+    public List<String> relatedIDs(Class<?> source, Object target) {
+        EntityMetadata<?> targetMetadata = metadataFor(target.getClass());
+        EntityMetadata.RelationMetadata relation = relationTo(metadataFor(source), target.getClass());
+        if (!relation.isEdge()) {
+            return new ArrayList<>(relation.inverseIDs(target));
+        }
+        CompositeKey partialKey = stub.createCompositeKey(relation.getEdgeType(), targetMetadata.idOf(target));
+        Set<String> ids = new LinkedHashSet<>();
+        QueryResultsIterator<KeyValue> results = scan(partialKey);
+        try {
+            for (KeyValue result : rows(results)) {
+                if (!pendingDeletes.contains(result.getKey())) {
+                    ids.add(lastAttributeOf(result.getKey()));
+                }
+            }
+        } finally {
+            close(results);
+        }
+        String prefix = partialKey.toString();
+        for (Map.Entry<String, Object> pending : pendingWrites.entrySet()) {
+            if (pending.getKey().startsWith(prefix) && pending.getValue() == INDEX_ENTRY) {
+                ids.add(lastAttributeOf(pending.getKey()));
+            }
+        }
+        return new ArrayList<>(ids);
+    }
+
+    /**
+     * Loads the entities of the source type whose {@link Relation} points at the target.
+     */
+    public <S> List<S> loadRelated(Class<S> source, Object target) {
+        return loadAll(source, relatedIDs(source, target));
+    }
+
+    /**
+     * @return a lazy, paged collection of the entities of the source type whose {@link Relation}
+     *         points at the target
+     */
+    public <S> PersistentCollection<S> relatedCollection(Class<S> source, Object target) {
+        return new PersistentCollection<>(this, source, () -> relatedIDs(source, target));
+    }
+
+    private static EntityMetadata.RelationMetadata relationTo(EntityMetadata<?> metadata, Class<?> target) {
+        for (EntityMetadata.RelationMetadata relation : metadata.getRelations()) {
+            if (relation.getTarget() == target) {
+                return relation;
+            }
+        }
+        throw new ChaincodeException("No relation from " + metadata.getPrefix() + " to " + target.getSimpleName(),
+                LOADING_ERRORS.OBJECT_TYPE_NOT_SUPPORTED.toString());
+    }
+
+    private String lastAttributeOf(String key) {
+        List<String> attributes = stub.splitCompositeKey(key).getAttributes();
+        return attributes.get(attributes.size() - 1);
+    }
+
+    /**
+     * Finds the entities whose {@link Indexed} field has the given value. Only the index keys of
+     * that value are scanned; the entities themselves are then read with {@link #loadAll}.
+     * Changes not yet flushed in this transaction are not visible to the index.
+     */
+    public <T> List<T> findBy(Class<T> type, String field, Object value) {
+        EntityMetadata<T> metadata = metadataFor(type);
+        EntityMetadata.IndexMetadata index = metadata.indexFor(field);
+        if (index == null) {
+            throw new ChaincodeException("Field " + field + " is not indexed", LOADING_ERRORS.FIELD_NOT_INDEXED.toString());
+        }
+        List<String> ids = new ArrayList<>();
+        CompositeKey partialKey = stub.createCompositeKey(index.getObjectType(), String.valueOf(value));
+        QueryResultsIterator<KeyValue> results = scan(partialKey);
+        try {
+            for (KeyValue result : rows(results)) {
+                ids.add(lastAttributeOf(result.getKey()));
+            }
+        } finally {
+            close(results);
+        }
+        return loadAll(type, ids);
+    }
+
+    /**
+     * Writes the index and edge keys of every stored entity of the given type, for entities that
+     * were saved before their fields were indexed or their relations were stored as edges, and
+     * rebuilds the statistics of its aggregated relations from the entities, so that entities
+     * saved before statistics were kept are counted. Submit it in a transaction of its own; it
+     * conflicts with every concurrent write of the type.
+     * @return the number of entities indexed
+     */
+    public int reindex(Class<?> type) {
+        EntityMetadata<?> metadata = metadataFor(type);
+        boolean hasEdges = false;
+        for (EntityMetadata.RelationMetadata relation : metadata.getRelations()) {
+            hasEdges |= relation.isEdge();
+        }
+        if (metadata.getIndexes().isEmpty() && !hasEdges && !metadata.isAggregated()) {
+            return 0;
+        }
+        List<EntityMetadata.RelationMetadata> relations = metadata.getRelations();
+        // Statistics recomputed from the entities, per aggregated relation and target ID.
+        List<Map<String, long[]>> totals = new ArrayList<>(relations.size());
+        for (EntityMetadata.RelationMetadata relation : relations) {
+            totals.add(relation.isAggregated() ? new HashMap<>() : null);
         }
-        CompositeKey ownerKey = stub.createCompositeKey(Owner.class.getSimpleName(), ownerID);
-        String ownerJSON = stub.getStringState(ownerKey.toString());
-        
-        if (ownerJSON.isEmpty()) {
-            throw new ChaincodeException("OWNER DOES NOT EXISTS", LOADING_ERRORS.OWNER_NOT_FOUND.toString());
+        int count = 0;
+        QueryResultsIterator<KeyValue> results = scan(metadata.getPrefix());
+        try {
+            for (KeyValue result : rows(results)) {
+                Object entity = decode(metadata.getCodec(), result.getValue());
+                String id = metadata.idOf(entity);
+                indexedValues.remove(result.getKey());
+                updateIndexes(metadata, result.getKey(), id, entity);
+                for (int i = 0; i < relations.size(); i++) {
+                    EntityMetadata.RelationMetadata relation = relations.get(i);
+                    String targetID = relation.foreignKey(entity);
+                    if (targetID == null) {
+                        continue;
+                    }
+                    if (relation.isEdge()) {
+                        writeKey(edgeKeyOf(relation, targetID, id), INDEX_ENTRY);
+                    }
+                    if (relation.isAggregated()) {
+                        long[] contribution = metadata.contributionOf(entity);
+                        add(totals.get(i).computeIfAbsent(targetID, k -> new long[contribution.length]), contribution);
+                    }
+                }
+                count++;
+            }
+        } finally {
+            close(results);
+        }
+        for (int i = 0; i < relations.size(); i++) {
+            if (relations.get(i).isAggregated()) {
+                rebuildStats(relations.get(i), totals.get(i));
+            }
         }
-        Owner owner = genson.deserialize(ownerJSON,Owner.class);
-        owner.setEntityManager(this);
-        return owner;
+        return count;
     }
 
-    // public void addUpdatedAsset(Asset asset) {
-    //     updatedAssets.add(asset);
-    // }
+    /**
+     * Replaces every delta key of the relation with one per target holding the given totals.
+     */
+    private void rebuildStats(EntityMetadata.RelationMetadata relation, Map<String, long[]> totals) {
+        QueryResultsIterator<KeyValue> results = scan(relation.getStatsType());
+        try {
+            for (KeyValue result : rows(results)) {
+                deleteKey(result.getKey());
+            }
+        } finally {
+            close(results);
+        }
+        Iterator<String> pending = pendingDeltas.keySet().iterator();
+        while (pending.hasNext()) {
+            String key = pending.next();
+            if (stub.splitCompositeKey(key).getObjectType().equals(relation.getStatsType())) {
+                deleteKey(key);
+                pending.remove();
+            }
+        }
+        for (Map.Entry<String, long[]> target : totals.entrySet()) {
+            String deltaKey = deltaKeyOf(relation, target.getKey());
+            pendingDeltas.put(deltaKey, target.getValue());
+            writeDelta(deltaKey, target.getValue(), false);
+        }
+    }
 
-    // public Set<Asset> getUpdatedAssets() {
-    //     return updatedAssets;
-    // }
+    /**
+     * Overrides, for this transaction, when the targets of the source type's {@link Relation}
+     * to the target type are loaded.
+     */
+    public void setFetchType(Class<?> source, Class<?> target, FetchType fetch) {
+        fetchTypes.put(relationTo(metadataFor(source), target), fetch);
+    }
+
+    public int getCacheHits() {
+        return identityMap.getHits();
+    }
+
+    public int getCacheMisses() {
+        return identityMap.getMisses();
+    }
+
+    /**
+     * @return the round trips and serialization work of this transaction so far
+     */
+    public TransactionMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Stops the transaction's clock and takes the identity map's counts. Call it after the last flush.
+     */
+    public TransactionMetrics finishMetrics() {
+        metrics.finish(identityMap.getHits(), identityMap.getMisses());
+        return metrics;
+    }
+
+    /**
+     * Deletes an entity and removes its ID from the inverse lists of its relations.
+     */
+    public void delete(Class<?> type, String id) {
+        requireWritable();
+        EntityMetadata<?> metadata = metadataFor(type);
+        Object entity = load(type, id);
+        String key = keyOf(metadata, id);
+        updateStats(metadata, key, null);
+        String[] previous = foreignKeys.remove(key);
+        dirtyFields.remove(key);
+        List<EntityMetadata.RelationMetadata> relations = metadata.getRelations();
+        for (int i = 0; i < relations.size(); i++) {
+            EntityMetadata.RelationMetadata relation = relations.get(i);
+            String targetID = previous == null ? relation.foreignKey(entity) : previous[i];
+            if (targetID == null) {
+                continue;
+            }
+            if (relation.isEdge()) {
+                deleteKey(edgeKeyOf(relation, targetID, id));
+                continue;
+            }
+            Object target = load(relation.getTarget(), targetID);
+            relation.inverseIDs(target).remove(id);
+            save(target);
+        }
+        removeIndexes(metadata, key, id, entity);
+        identityMap.markAbsent(key);
+        deleteKey(key);
+    }
 
     public void deleteAsset(String assetID) {
-        CompositeKey assetKey = stub.createCompositeKey(Asset.class.getSimpleName(), assetID);
-        Asset asset = loadAsset(assetID);
-        Owner owner = loadOwner(asset.getOwnerID());
-        owner.removeAsset(asset);
-        save(owner);
-        stub.delState(assetKey.toString());
+        delete(Asset.class, assetID);
     }
 
+    /**
+     * Streams every owner and the IDs of its assets as a JSON object keyed by owner ID.
+     * Prefer {@link #viewDB(int, String)} on large ledgers, as the whole response has to fit
+     * in one shim message.
+     */
     public String viewDB() {
-        Map<String,ArrayList<String>> resultMapping = new HashMap<String,ArrayList<String>>();
-        QueryResultsIterator<KeyValue> results = stub.getStateByPartialCompositeKey(Owner.class.getSimpleName());
-        for (KeyValue result: results) {
-            Owner owner = genson.deserialize(result.getStringValue(),Owner.class);
-            resultMapping.put(owner.getOwnerID(), owner.getMyAssetIDCollection());
+        EntityMetadata<Owner> owners = metadataFor(Owner.class);
+        JsonResponse response = new JsonResponse(genson);
+        ObjectWriter writer = response.getWriter();
+        writer.beginObject();
+        QueryResultsIterator<KeyValue> results = scan(owners.getPrefix());
+        try {
+            writeOwners(owners, results, writer);
+        } finally {
+            close(results);
         }
-        String response = genson.serialize(resultMapping);
-        return response;
+        writer.endObject();
+        return response.toJSON();
     }
-    public boolean AssetExists(String assetID) {
-        try{
-            Asset asset = loadAsset(assetID);
-            return (asset.getAssetID() != null);
-        } catch(Exception error) {
-            return false;
+
+    /**
+     * Streams one page of owners, in the form
+     * {"owners":{"owner1":["asset1",...],...},"fetchedRecordsCount":n,"bookmark":"..."}.
+     * Pass the returned bookmark to fetch the next page; an empty bookmark starts from the first owner.
+     */
+    public String viewDB(int pageSize, String bookmark) {
+        EntityMetadata<Owner> owners = metadataFor(Owner.class);
+        JsonResponse response = new JsonResponse(genson);
+        ObjectWriter writer = response.getWriter();
+        writer.beginObject().writeName("owners").beginObject();
+        metrics.scan();
+        QueryResultsIteratorWithMetadata<KeyValue> results = stub.getStateByPartialCompositeKeyWithPagination(
+                stub.createCompositeKey(owners.getPrefix()), pageSize, bookmark == null ? "" : bookmark);
+        try {
+            writeOwners(owners, results, writer);
+            writer.endObject();
+            QueryResponseMetadata metadata = results.getMetadata();
+            writer.writeNumber("fetchedRecordsCount", metadata.getFetchedRecordsCount());
+            writer.writeString("bookmark", metadata.getBookmark());
+        } finally {
+            close(results);
         }
+        writer.endObject();
+        return response.toJSON();
     }
 
-    public boolean OwnerExists(String ownerID) {
-        try{
-            Owner owner = loadOwner(ownerID);
-            return (owner.getOwnerID() != null);
-        } catch(Exception error) {
-            return false;
+    private void writeOwners(EntityMetadata<Owner> owners, Iterable<KeyValue> results, ObjectWriter writer) {
+        for (KeyValue result : rows(results)) {
+            Owner owner = decode(owners.getCodec(), result.getValue());
+            writer.writeName(owner.getOwnerID()).beginArray();
+            for (String assetID : relatedIDs(Asset.class, owner)) {
+                writer.writeValue(assetID);
+            }
+            writer.endArray();
         }
     }
 
+    public boolean AssetExists(String assetID) {
+        return exists(Asset.class, assetID);
+    }
+
+    public boolean OwnerExists(String ownerID) {
+        return exists(Owner.class, ownerID);
+    }
+
     public boolean AlreadyOwnedAsset(final String assetID, final String newOwnerID) {
-        Owner owner = loadOwner(newOwnerID);
-        ArrayList<String> ownedAssetIDs = owner.getMyAssetIDCollection();
-        if (ownedAssetIDs.contains(assetID)) {
+        loadOwner(newOwnerID);
+        if (newOwnerID.equals(loadAsset(assetID).getOwnerID())) {
             throw new ChaincodeException("OWNER ALREADY OWNS ASSET", LOADING_ERRORS.OWNER_ALREADY_OWNS_ASSET.toString());
         }
-        return ownedAssetIDs.contains(assetID);    
+        return false;
     }
 
-    public EntityManager(ChaincodeStub stub) {
+    public EntityManager(ChaincodeStub stub, EntityRegistry registry) {
+        this(stub, registry, false);
+    }
+
+    public EntityManager(ChaincodeStub stub, EntityRegistry registry, boolean writeBehind) {
+        this(stub, registry, writeBehind, false);
+    }
+
+    /**
+     * Creates a manager for evaluate transactions. Entities it loads are attached but have no
+     * change listeners, relation or index bookkeeping, and saving or deleting anything throws a
+     * ChaincodeException with a READ_ONLY payload.
+     */
+    public static EntityManager readOnly(ChaincodeStub stub, EntityRegistry registry) {
+        return new EntityManager(stub, registry, false, true);
+    }
+
+    private EntityManager(ChaincodeStub stub, EntityRegistry registry, boolean writeBehind, boolean readOnly) {
         this.stub = stub;
-        this.assetCache = new HashMap<>();
-        this.ownerCache = new HashMap<>();
+        this.registry = registry;
+        this.genson = registry.getGenson();
+        this.identityMap = new IdentityMap();
+        this.writeBehind = writeBehind;
+        this.readOnly = readOnly;
+        this.pendingWrites = new LinkedHashMap<>();
+        this.pendingDeletes = new LinkedHashSet<>();
+        this.indexedValues = new HashMap<>();
+        this.foreignKeys = new HashMap<>();
+        this.dirtyFields = new HashMap<>();
+        this.versioned = new HashSet<>();
+        this.contributions = new HashMap<>();
+        this.pendingDeltas = new HashMap<>();
+        this.fetchTypes = new HashMap<>();
     }
 }
-
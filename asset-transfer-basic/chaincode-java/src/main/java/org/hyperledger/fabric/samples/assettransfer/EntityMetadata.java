@@ -0,0 +1,256 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.samples.assettransfer;
+
+import java.lang.invoke.MethodHandle;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Everything EntityManager needs to persist one entity type, resolved once by EntityRegistry.
+ */
+final class EntityMetadata<T> {
+
+    /**
+     * A {@link Relation} field, with the foreign key and the target's inverse ID list as method handles.
+     * Edge relations have no inverse ID list but the object type of their edge keys.
+     */
+    static final class RelationMetadata {
+        private final String field;
+        private final Class<?> target;
+        private final MethodHandle foreignKey;
+        private final MethodHandle inverseIDs;
+        private final String edgeType;
+        private final String statsType;
+        private final FetchType fetch;
+
+        RelationMetadata(String field, Class<?> target, MethodHandle foreignKey, MethodHandle inverseIDs, String edgeType,
+                String statsType, FetchType fetch) {
+            this.field = field;
+            this.target = target;
+            this.foreignKey = foreignKey;
+            this.inverseIDs = inverseIDs;
+            this.edgeType = edgeType;
+            this.statsType = statsType;
+            this.fetch = fetch;
+        }
+
+        FetchType getFetch() {
+            return fetch;
+        }
+
+        boolean isAggregated() {
+            return statsType != null;
+        }
+
+        String getStatsType() {
+            return statsType;
+        }
+
+        String getField() {
+            return field;
+        }
+
+        Class<?> getTarget() {
+            return target;
+        }
+
+        boolean isEdge() {
+            return edgeType != null;
+        }
+
+        String getEdgeType() {
+            return edgeType;
+        }
+
+        String foreignKey(Object entity) {
+            return (String) invoke(foreignKey, entity);
+        }
+
+        @SuppressWarnings("unchecked")
+        List<String> inverseIDs(Object target) {
+            return (List<String>) invoke(inverseIDs, target);
+        }
+    }
+
+    /**
+     * An {@link Indexed} field and the object type of its index keys.
+     */
+    static final class IndexMetadata {
+        private final String field;
+        private final String objectType;
+        private final MethodHandle value;
+
+        IndexMetadata(String field, String objectType, MethodHandle value) {
+            this.field = field;
+            this.objectType = objectType;
+            this.value = value;
+        }
+
+        String getField() {
+            return field;
+        }
+
+        String getObjectType() {
+            return objectType;
+        }
+
+        /**
+         * @return the field value as it appears in index keys, or null if the field is null
+         */
+        String valueOf(Object entity) {
+            Object fieldValue = invoke(value, entity);
+            return fieldValue == null ? null : fieldValue.toString();
+        }
+    }
+
+    /**
+     * A {@link Summed} field.
+     */
+    static final class SumMetadata {
+        private final String field;
+        private final MethodHandle value;
+
+        SumMetadata(String field, MethodHandle value) {
+            this.field = field;
+            this.value = value;
+        }
+
+        String getField() {
+            return field;
+        }
+
+        long valueOf(Object entity) {
+            return ((Number) invoke(value, entity)).longValue();
+        }
+    }
+
+    private final Class<T> type;
+    private final String prefix;
+    private final EntityCodec<T> codec;
+    private final MethodHandle id;
+    private final MethodHandle version;
+    private final MethodHandle setVersion;
+    private final List<RelationMetadata> relations;
+    private final List<IndexMetadata> indexes;
+    private final List<SumMetadata> sums;
+    private final Map<String, IndexMetadata> indexesByField = new HashMap<>();
+    private final boolean aggregated;
+    private final String notFoundMessage;
+    private final String notFoundError;
+
+    EntityMetadata(Class<T> type, String prefix, EntityCodec<T> codec, MethodHandle id, MethodHandle version,
+            MethodHandle setVersion, List<RelationMetadata> relations, List<IndexMetadata> indexes, List<SumMetadata> sums) {
+        this.type = type;
+        this.prefix = prefix;
+        this.codec = codec;
+        this.id = id;
+        this.version = version;
+        this.setVersion = setVersion;
+        this.relations = relations;
+        this.indexes = indexes;
+        this.sums = sums;
+        for (IndexMetadata index : indexes) {
+            indexesByField.put(index.getField(), index);
+        }
+        boolean anyAggregated = false;
+        for (RelationMetadata relation : relations) {
+            anyAggregated |= relation.isAggregated();
+        }
+        this.aggregated = anyAggregated;
+        this.notFoundMessage = prefix.toUpperCase() + " DOES NOT EXIST";
+        this.notFoundError = prefix.toUpperCase() + "_NOT_FOUND";
+    }
+
+    Class<T> getType() {
+        return type;
+    }
+
+    String getPrefix() {
+        return prefix;
+    }
+
+    EntityCodec<T> getCodec() {
+        return codec;
+    }
+
+    List<RelationMetadata> getRelations() {
+        return relations;
+    }
+
+    List<IndexMetadata> getIndexes() {
+        return indexes;
+    }
+
+    /**
+     * @return the index on the given field, or null if the field is not indexed
+     */
+    IndexMetadata indexFor(String field) {
+        return indexesByField.get(field);
+    }
+
+    /**
+     * @return true if any relation of the type keeps statistics for its targets
+     */
+    boolean isAggregated() {
+        return aggregated;
+    }
+
+    List<SumMetadata> getSums() {
+        return sums;
+    }
+
+    /**
+     * @return what the entity adds to its targets' statistics: 1, then the value of each {@link Summed} field
+     */
+    long[] contributionOf(Object entity) {
+        long[] contribution = new long[sums.size() + 1];
+        contribution[0] = 1;
+        for (int i = 0; i < sums.size(); i++) {
+            contribution[i + 1] = sums.get(i).valueOf(entity);
+        }
+        return contribution;
+    }
+
+    String idOf(Object entity) {
+        return (String) invoke(id, entity);
+    }
+
+    boolean isVersioned() {
+        return version != null;
+    }
+
+    long versionOf(Object entity) {
+        return (Long) invoke(version, entity);
+    }
+
+    void setVersion(Object entity, long value) {
+        try {
+            setVersion.invokeExact(entity, value);
+        } catch (RuntimeException | Error error) {
+            throw error;
+        } catch (Throwable error) {
+            throw new IllegalStateException(error);
+        }
+    }
+
+    String getNotFoundMessage() {
+        return notFoundMessage;
+    }
+
+    String getNotFoundError() {
+        return notFoundError;
+    }
+
+    private static Object invoke(MethodHandle handle, Object target) {
+        try {
+            return handle.invokeExact(target);
+        } catch (RuntimeException | Error error) {
+            throw error;
+        } catch (Throwable error) {
+            throw new IllegalStateException(error);
+        }
+    }
+}
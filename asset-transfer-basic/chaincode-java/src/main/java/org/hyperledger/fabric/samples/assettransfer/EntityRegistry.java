@@ -0,0 +1,177 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.samples.assettransfer;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.owlike.genson.Genson;
+
+/**
+ * Metadata for every entity type the chaincode persists. Built once when the contract
+ * class is loaded, so saves and loads do no reflection or type dispatch of their own.
+ * The registry, its Genson instance and its codecs are shared by every transaction, and may
+ * be used from several transaction threads at once.
+ */
+public final class EntityRegistry {
+
+    private static final MethodType ACCESSOR = MethodType.methodType(Object.class, Object.class);
+    private static final MethodType VERSION_SETTER = MethodType.methodType(void.class, Object.class, long.class);
+
+    private final Genson genson;
+    private final Map<Class<?>, EntityMetadata<?>> entities = new ConcurrentHashMap<>();
+
+    public EntityRegistry(Genson genson) {
+        this.genson = genson;
+    }
+
+    Genson getGenson() {
+        return genson;
+    }
+
+    /**
+     * Resolves the Genson converters of every registered type, and of the values EntityManager
+     * stores besides entities, so that the first transactions do not pay for building them.
+     */
+    public EntityRegistry prewarm() {
+        for (Class<?> type : entities.keySet()) {
+            genson.provideConverter(type);
+        }
+        genson.provideConverter(long[].class);
+        return this;
+    }
+
+    public EntityRegistry register(Class<?> type) {
+        return register(type, null);
+    }
+
+    /**
+     * Registers an entity type with the given codec instead of the one named by its {@link Entity} annotation.
+     */
+    public <T> EntityRegistry register(Class<T> type, EntityCodec<T> codec) {
+        Entity entity = type.getAnnotation(Entity.class);
+        if (entity == null) {
+            throw new IllegalArgumentException(type.getName() + " is not annotated with @Entity");
+        }
+        String prefix = prefixOf(type, entity);
+        MethodHandle id = null;
+        MethodHandle version = null;
+        MethodHandle setVersion = null;
+        List<EntityMetadata.RelationMetadata> relations = new ArrayList<>();
+        List<EntityMetadata.IndexMetadata> indexes = new ArrayList<>();
+        List<EntityMetadata.SumMetadata> sums = new ArrayList<>();
+        for (Field field : type.getDeclaredFields()) {
+            if (field.isAnnotationPresent(Id.class)) {
+                id = accessor(field);
+            }
+            if (field.isAnnotationPresent(Version.class)) {
+                if (field.getType() != long.class) {
+                    throw new IllegalArgumentException(field + " must be a long to be a @Version field");
+                }
+                version = accessor(field);
+                setVersion = setter(field, VERSION_SETTER);
+            }
+            Relation relation = field.getAnnotation(Relation.class);
+            if (relation != null) {
+                relations.add(relationOf(prefix, field, relation));
+            }
+            if (field.isAnnotationPresent(Indexed.class)) {
+                indexes.add(new EntityMetadata.IndexMetadata(field.getName(), prefix + "~" + field.getName(), accessor(field)));
+            }
+            if (field.isAnnotationPresent(Summed.class)) {
+                if (field.getType() != int.class && field.getType() != long.class) {
+                    throw new IllegalArgumentException(field + " must be an int or a long to be a @Summed field");
+                }
+                sums.add(new EntityMetadata.SumMetadata(field.getName(), accessor(field)));
+            }
+        }
+        if (id == null) {
+            throw new IllegalArgumentException(type.getName() + " has no @Id field");
+        }
+        if (codec == null) {
+            codec = createCodec(type, entity.codec());
+        }
+        entities.put(type, new EntityMetadata<>(type, prefix, codec, id, version, setVersion,
+                Collections.unmodifiableList(relations), Collections.unmodifiableList(indexes),
+                Collections.unmodifiableList(sums)));
+        return this;
+    }
+
+    private static EntityMetadata.RelationMetadata relationOf(String prefix, Field field, Relation relation) {
+        Class<?> target = relation.target();
+        Entity targetEntity = target.getAnnotation(Entity.class);
+        if (targetEntity == null) {
+            throw new IllegalArgumentException(target.getName() + " is not annotated with @Entity");
+        }
+        String pairType = prefixOf(target, targetEntity) + prefix;
+        String statsType = relation.aggregated() ? pairType + "Stats" : null;
+        if (relation.storage() == RelationStorage.EDGE) {
+            return new EntityMetadata.RelationMetadata(field.getName(), target, accessor(field), null, pairType, statsType,
+                    relation.fetch());
+        }
+        return new EntityMetadata.RelationMetadata(field.getName(), target, accessor(field),
+                accessor(field(target, relation.inverse())), null, statsType, relation.fetch());
+    }
+
+    private static String prefixOf(Class<?> type, Entity entity) {
+        return entity.prefix().isEmpty() ? type.getSimpleName() : entity.prefix();
+    }
+
+    /**
+     * @return the metadata of a registered type, or null
+     */
+    @SuppressWarnings("unchecked")
+    <T> EntityMetadata<T> metadataFor(Class<T> type) {
+        return (EntityMetadata<T>) entities.get(type);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private <T> EntityCodec<T> createCodec(Class<T> type, Class<? extends EntityCodec> codecType) {
+        EntityCodec<T> json = new JsonEntityCodec<>(type, genson);
+        if (codecType == JsonEntityCodec.class) {
+            return json;
+        }
+        try {
+            if (BinaryEntityCodec.class.isAssignableFrom(codecType)) {
+                return codecType.getConstructor(EntityCodec.class).newInstance(json);
+            }
+            return codecType.getConstructor().newInstance();
+        } catch (ReflectiveOperationException error) {
+            throw new IllegalArgumentException("Cannot create codec " + codecType.getName(), error);
+        }
+    }
+
+    private static Field field(Class<?> type, String name) {
+        try {
+            return type.getDeclaredField(name);
+        } catch (NoSuchFieldException error) {
+            throw new IllegalArgumentException(type.getName() + " has no field " + name, error);
+        }
+    }
+
+    private static MethodHandle accessor(Field field) {
+        field.setAccessible(true);
+        try {
+            return MethodHandles.lookup().unreflectGetter(field).asType(ACCESSOR);
+        } catch (IllegalAccessException error) {
+            throw new IllegalArgumentException("Cannot access " + field, error);
+        }
+    }
+
+    private static MethodHandle setter(Field field, MethodType type) {
+        field.setAccessible(true);
+        try {
+            return MethodHandles.lookup().unreflectSetter(field).asType(type);
+        } catch (IllegalAccessException error) {
+            throw new IllegalArgumentException("Cannot access " + field, error);
+        }
+    }
+}
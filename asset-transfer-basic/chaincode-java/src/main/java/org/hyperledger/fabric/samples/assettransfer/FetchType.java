@@ -0,0 +1,27 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.samples.assettransfer;
+
+/**
+ * When EntityManager loads the target of a {@link Relation}.
+ */
+public enum FetchType {
+
+    /**
+     * Only when the entity asks for it, e.g. through a getter that calls EntityManager.load.
+     */
+    LAZY,
+
+    /**
+     * Together with the entity. Entities loaded together have their targets loaded together too.
+     */
+    EAGER,
+
+    /**
+     * Together with the entity when several entities are loaded at once through
+     * EntityManager.loadAll, so a target shared by several of them is read once; entities
+     * loaded one by one leave their target to be loaded lazily.
+     */
+    BATCH
+}
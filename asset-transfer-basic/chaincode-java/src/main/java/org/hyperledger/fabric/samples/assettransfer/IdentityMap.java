@@ -0,0 +1,56 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.samples.assettransfer;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Per-transaction identity map keyed by ledger key. Holds one instance per key,
+ * remembers keys that were looked up and found to be absent, and counts hits and misses.
+ */
+final class IdentityMap {
+
+    private static final Object ABSENT = new Object();
+
+    private final Map<String, Object> entries = new HashMap<>();
+    private int hits;
+    private int misses;
+
+    /**
+     * @return true if the key has been loaded, saved or found absent in this transaction
+     */
+    boolean isKnown(String key) {
+        if (entries.containsKey(key)) {
+            hits++;
+            return true;
+        }
+        misses++;
+        return false;
+    }
+
+    /**
+     * @return the mapped instance, or null if the key is absent or unknown
+     */
+    <T> T get(String key, Class<T> type) {
+        Object entry = entries.get(key);
+        return entry == ABSENT ? null : type.cast(entry);
+    }
+
+    void put(String key, Object entity) {
+        entries.put(key, entity);
+    }
+
+    void markAbsent(String key) {
+        entries.put(key, ABSENT);
+    }
+
+    int getHits() {
+        return hits;
+    }
+
+    int getMisses() {
+        return misses;
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.samples.assettransfer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.owlike.genson.Genson;
+
+/**
+ * Stores entities as Genson JSON. This is the format the ledger has always used.
+ */
+public final class JsonEntityCodec<T> implements EntityCodec<T> {
+
+    private final Class<T> type;
+    private final Genson genson;
+
+    public JsonEntityCodec(Class<T> type, Genson genson) {
+        this.type = type;
+        this.genson = genson;
+    }
+
+    @Override
+    public byte[] encode(T entity) {
+        return genson.serialize(entity).getBytes(UTF_8);
+    }
+
+    @Override
+    public T decode(byte[] data) {
+        return genson.deserialize(data, type);
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.samples.assettransfer;
+
+import java.io.StringWriter;
+
+import com.owlike.genson.Genson;
+import com.owlike.genson.stream.ObjectWriter;
+
+/**
+ * Streams a transaction response into a single buffer. Returning the result as a string
+ * means the contract serializer passes it through untouched, so each entity is written
+ * to JSON exactly once.
+ */
+final class JsonResponse {
+
+    /**
+     * Implemented by entities that can write their public view straight to a JSON stream.
+     */
+    interface Writable {
+        void writeJSON(ObjectWriter writer);
+    }
+
+    private final StringWriter buffer = new StringWriter();
+    private final ObjectWriter writer;
+
+    JsonResponse(Genson genson) {
+        this.writer = genson.createWriter(buffer);
+    }
+
+    ObjectWriter getWriter() {
+        return writer;
+    }
+
+    String toJSON() {
+        writer.flush();
+        return buffer.toString();
+    }
+
+    static String of(Genson genson, Writable item) {
+        JsonResponse response = new JsonResponse(genson);
+        item.writeJSON(response.getWriter());
+        return response.toJSON();
+    }
+
+    static String ofArray(Genson genson, Iterable<? extends Writable> items) {
+        JsonResponse response = new JsonResponse(genson);
+        ObjectWriter writer = response.getWriter();
+        writer.beginArray();
+        for (Writable item : items) {
+            item.writeJSON(writer);
+        }
+        writer.endArray();
+        return response.toJSON();
+    }
+}
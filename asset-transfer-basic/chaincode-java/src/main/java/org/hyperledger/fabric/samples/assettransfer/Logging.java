@@ -0,0 +1,59 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.samples.assettransfer;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.logging.SimpleFormatter;
+import java.util.logging.StreamHandler;
+
+/**
+ * Loggers for the chaincode's classes. They share one parent per package, at the level named by
+ * {@value #LEVEL_VARIABLE} (WARNING by default) and writing through an {@link AsyncLogHandler}.
+ * Log with the Supplier overloads, e.g. {@code LOGGER.fine(() -> ...)}, so that messages below
+ * the level are never built.
+ */
+final class Logging {
+
+    static final String LEVEL_VARIABLE = "CHAINCODE_LOG_LEVEL";
+
+    private static final Logger PACKAGE_LOGGER = configure(Logging.class.getPackage().getName());
+
+    private Logging() {
+    }
+
+    static Logger getLogger(Class<?> type) {
+        return Logger.getLogger(type.getName());
+    }
+
+    private static Logger configure(String name) {
+        Logger logger = Logger.getLogger(name);
+        logger.setLevel(levelOf(System.getenv(LEVEL_VARIABLE)));
+        StreamHandler stdout = new StreamHandler(System.out, new SimpleFormatter());
+        stdout.setLevel(Level.ALL);
+        logger.addHandler(new AsyncLogHandler(stdout));
+        logger.setUseParentHandlers(false);
+        return logger;
+    }
+
+    private static Level levelOf(String name) {
+        if (name == null || name.isEmpty()) {
+            return Level.WARNING;
+        }
+        switch (name.toUpperCase()) {
+            case "DEBUG":
+                return Level.FINE;
+            case "WARN":
+                return Level.WARNING;
+            case "ERROR":
+                return Level.SEVERE;
+            default:
+                try {
+                    return Level.parse(name.toUpperCase());
+                } catch (IllegalArgumentException error) {
+                    return Level.WARNING;
+                }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.samples.assettransfer;
+
+import java.io.UncheckedIOException;
+import java.util.logging.Level;
+
+/**
+ * Receives the {@link TransactionMetrics} of every transaction that completes. Called from the
+ * chaincode's transaction threads, so implementations must be thread safe and cheap.
+ * Transactions that throw never complete, so they are only seen by {@link #started}; those that
+ * fail MVCC validation do so on the peer after the chaincode returned, and are not seen at all.
+ */
+public interface OrmMetrics {
+
+    /**
+     * Environment variable holding the port to serve Prometheus metrics on; unset disables them.
+     */
+    String PORT_VARIABLE = "ORM_METRICS_PORT";
+
+    OrmMetrics NONE = (transaction, metrics) -> { };
+
+    void record(String transaction, TransactionMetrics metrics);
+
+    /**
+     * Called before every transaction, including those that go on to throw.
+     */
+    default void started(String transaction) {
+    }
+
+    /**
+     * @return a {@link PrometheusMetrics} serving on {@value #PORT_VARIABLE}, or {@link #NONE} if it is not set
+     */
+    static OrmMetrics fromEnvironment() {
+        return forPort(System.getenv(PORT_VARIABLE));
+    }
+
+    /**
+     * @return a {@link PrometheusMetrics} serving on the port, or {@link #NONE} if it is not set or
+     *         cannot be served on; metrics must never keep the contract from loading
+     */
+    static OrmMetrics forPort(String port) {
+        if (port == null || port.isEmpty()) {
+            return NONE;
+        }
+        try {
+            PrometheusMetrics metrics = new PrometheusMetrics();
+            metrics.serve(Integer.parseInt(port));
+            return metrics;
+        } catch (IllegalArgumentException | UncheckedIOException error) {
+            Logging.getLogger(OrmMetrics.class).log(Level.WARNING, "Metrics disabled: cannot serve them on port " + port, error);
+            return NONE;
+        }
+    }
+}
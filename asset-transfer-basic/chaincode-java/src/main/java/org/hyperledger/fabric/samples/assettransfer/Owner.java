@@ -4,27 +4,34 @@
 package org.hyperledger.fabric.samples.assettransfer;
 
 import java.beans.PropertyChangeEvent;
-import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Logger;
 
 import org.hyperledger.fabric.contract.annotation.DataType;
 import org.hyperledger.fabric.contract.annotation.Property;
+import org.hyperledger.fabric.shim.ChaincodeException;
 
 import com.owlike.genson.annotation.JsonProperty;
 
-import javafx.collections.FXCollections;
-import javafx.collections.ListChangeListener;
-import javafx.collections.ObservableList;
+@DataType()
+@Entity
+public final class Owner implements EntityBase {
 
+    private static final Logger LOGGER = Logging.getLogger(Owner.class);
 
-@DataType()
-public final class Owner{
+    private enum OWNER_ERRORS {
+        ASSET_WITHOUT_OWNER
+    }
 
     private EntityManager manager;
 
+    @Override
     public void setEntityManager(EntityManager manager) {
         this.manager = manager;
     }
 
+    @Id
     @Property()
     private String ownerID;
 
@@ -34,11 +41,7 @@ public final class Owner{
     @Property()
     private String lastName;
 
-    @Property()
-    private ArrayList<String> ownedAssetIDs;
-
-    @Property()
-    private ObservableList<Asset> ownedAssets;
+    private transient PersistentCollection<Asset> ownedAssets;
 
     public void setName(String newName) {
         this.name = newName;
@@ -48,33 +51,29 @@ public final class Owner{
         this.lastName = newLastName;
     }
 
-    public void addAsset(Asset asset) {
-        addAssetID(asset.getAssetID());
-    }
-
-    public void removeAsset(Asset asset) {
-        removeAssetID(asset.getAssetID());
-    }
-
-    private void addAssetID(String assetID) {
-        this.ownedAssetIDs.add(assetID);
-    }
-
-    private void removeAssetID(String assetID) {
-        this.ownedAssetIDs.remove(assetID);
+    /**
+     * Assets added to the returned collection are transferred to this owner when it is saved.
+     * Nothing is read from the ledger until the collection is first used.
+     */
+    public PersistentCollection<Asset> GetOwnedAssets() {
+        if (ownedAssets == null) {
+            ownedAssets = manager.relatedCollection(Asset.class, this);
+        }
+        return ownedAssets;
     }
 
-    public ObservableList<Asset> GetOwnedAssets() {
-        ObservableList<Asset> OwnedAssetList = FXCollections.observableArrayList();
-            
-        System.out.println("populating assets");
-        for (String assetID: ownedAssetIDs) {
-            Asset asset = manager.loadAsset(assetID);
-            OwnedAssetList.add(asset);
-        } 
-        ownedAssets = OwnedAssetList;
-        initiateChange();      
-        return ownedAssets;
+    @Override
+    public void beforeSave() {
+        if (ownedAssets == null || !ownedAssets.isDirty()) {
+            return;
+        }
+        if (!ownedAssets.getRemoved().isEmpty()) {
+            throw new ChaincodeException("AN ASSET CANNOT BE LEFT WITHOUT AN OWNER", OWNER_ERRORS.ASSET_WITHOUT_OWNER.toString());
+        }
+        for (Asset asset : ownedAssets.getAdded()) {
+            asset.setOwner(this);
+        }
+        ownedAssets.clearChanges();
     }
 
     @JsonProperty("ownerID")
@@ -92,58 +91,27 @@ public final class Owner{
         return this.lastName;
     }
 
-    @JsonProperty("OwnedAssetIDCollection")
-    public ArrayList<String> getMyAssetIDCollection() {
-        return this.ownedAssetIDs;
-    }
-
-    @JsonProperty("OwnedAssetIDCollection")
-    public void setMyAssetIDCollection(ArrayList<String> OwnedAssetIDCollection) {
-        this.ownedAssetIDs = OwnedAssetIDCollection;
+    /**
+     * Ownership is stored as edge keys rather than in the owner document, so the IDs are read
+     * through the entity manager. Not a bean getter, so serializing an owner never scans its edges.
+     */
+    public List<String> assetIDs() {
+        if (manager == null) {
+            return Collections.emptyList();
+        }
+        return manager.relatedIDs(Asset.class, this);
     }
     
     public void handleAssetUpdate(PropertyChangeEvent event) {
-        System.out.println("Owner " + name + " " + lastName + " received notification:");
-        System.out.println("Asset Property Name: " + event.getPropertyName());
-        System.out.println("Changed Value: " + event.getNewValue());
-        System.out.println("-------------------");
-    }
-    
-    private void initiateChange() {
-        ownedAssets.addListener(new ListChangeListener<Asset>() {
-        @Override
-        public void onChanged(Change<? extends Asset> change) {
-            while (change.next()) {
-                if (change.wasAdded()) {
-                    for (Asset asset : change.getAddedSubList()) {
-                        System.out.println("Adding assetID: " + asset.getAssetID());
-                        addAssetID(asset.getAssetID());
-                    }
-                } else if (change.wasRemoved()) {
-                    for (Asset asset : change.getRemoved()) {
-                        System.out.println("Removing assetID: " + asset.getAssetID());
-                        removeAssetID(asset.getAssetID());
-                    }
-                }
-            }
-        }});
-    }
-
-    public Owner(String ownerID, String name, String lastName) {
-        this.ownerID = ownerID;
-        this.name = name;
-        this.lastName = lastName;
-        this.ownedAssetIDs = new ArrayList<>();
-        this.ownedAssets = null;
+        LOGGER.fine(() -> String.format("Owner %s notified of asset change: %s = %s",
+                ownerID, event.getPropertyName(), event.getNewValue()));
     }
 
     public Owner(@JsonProperty("ownerID") final String ownerID, @JsonProperty("name") final String name,
-                @JsonProperty("lastName") final String lastName, @JsonProperty("ownedAssets") final ObservableList<Asset> ownedAssets) {
+                @JsonProperty("lastName") final String lastName) {
         this.ownerID = ownerID;
         this.name = name;
         this.lastName = lastName;
-        this.ownedAssets = FXCollections.observableArrayList();
-        initiateChange();
     }
 
 }
@@ -0,0 +1,23 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.samples.assettransfer;
+
+public final class OwnerBinaryCodec extends BinaryEntityCodec<Owner> {
+
+    public OwnerBinaryCodec(EntityCodec<Owner> legacyCodec) {
+        super(legacyCodec);
+    }
+
+    @Override
+    protected void writeFields(Output out, Owner owner) {
+        out.writeString(owner.getOwnerID());
+        out.writeString(owner.getName());
+        out.writeString(owner.getLastName());
+    }
+
+    @Override
+    protected Owner readFields(Input in) {
+        return new Owner(in.readString(), in.readString(), in.readString());
+    }
+}
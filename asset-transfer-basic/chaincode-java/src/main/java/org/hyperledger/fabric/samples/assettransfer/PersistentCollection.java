@@ -0,0 +1,195 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.samples.assettransfer;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Lazy view of the entities on the other side of a relation. Only the IDs are read up front,
+ * when the collection is first queried; the entities are loaded page by page as an iterator
+ * reaches them. Adds and removes are kept aside until the owning entity applies them to the
+ * unit of work, and are reflected by size(), contains() and iteration in the meantime.
+ */
+public final class PersistentCollection<T> extends AbstractCollection<T> {
+
+    // Entities loaded each time an iterator reaches a page that is not loaded yet.
+    static final int DEFAULT_PAGE_SIZE = 8;
+
+    private final EntityManager manager;
+    private final Class<T> type;
+    private final Supplier<List<String>> idSource;
+    private final int pageSize;
+
+    private List<String> ids;
+    private Set<String> idSet;
+    private final Map<String, T> added = new LinkedHashMap<>();
+    private final Set<String> removed = new LinkedHashSet<>();
+
+    PersistentCollection(EntityManager manager, Class<T> type, Supplier<List<String>> idSource) {
+        this(manager, type, idSource, DEFAULT_PAGE_SIZE);
+    }
+
+    PersistentCollection(EntityManager manager, Class<T> type, Supplier<List<String>> idSource, int pageSize) {
+        this.manager = manager;
+        this.type = type;
+        this.idSource = idSource;
+        this.pageSize = pageSize;
+    }
+
+    private List<String> ids() {
+        if (ids == null) {
+            ids = idSource.get();
+            idSet = new LinkedHashSet<>(ids);
+        }
+        return ids;
+    }
+
+    /**
+     * @return true once the IDs have been read from the ledger
+     */
+    public boolean isInitialized() {
+        return ids != null;
+    }
+
+    @Override
+    public int size() {
+        int size = ids().size();
+        for (String id : removed) {
+            if (idSet.contains(id)) {
+                size--;
+            }
+        }
+        for (String id : added.keySet()) {
+            if (!idSet.contains(id)) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public boolean contains(Object entity) {
+        if (!type.isInstance(entity)) {
+            return false;
+        }
+        String id = manager.idOf(entity);
+        ids();
+        return added.containsKey(id) || idSet.contains(id) && !removed.contains(id);
+    }
+
+    @Override
+    public boolean add(T entity) {
+        String id = manager.idOf(entity);
+        if (contains(entity)) {
+            return false;
+        }
+        removed.remove(id);
+        if (!idSet.contains(id)) {
+            added.put(id, entity);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean remove(Object entity) {
+        if (!contains(entity)) {
+            return false;
+        }
+        String id = manager.idOf(entity);
+        if (added.remove(id) == null) {
+            removed.add(id);
+        }
+        return true;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new PageIterator();
+    }
+
+    /**
+     * @return the entities added since the last {@link #clearChanges()}
+     */
+    public Collection<T> getAdded() {
+        return Collections.unmodifiableCollection(added.values());
+    }
+
+    /**
+     * @return the IDs of the entities removed since the last {@link #clearChanges()}
+     */
+    public Set<String> getRemoved() {
+        return Collections.unmodifiableSet(removed);
+    }
+
+    public boolean isDirty() {
+        return !added.isEmpty() || !removed.isEmpty();
+    }
+
+    /**
+     * Forgets the pending changes once they have been applied, and the IDs so that
+     * they are read again on next use.
+     */
+    public void clearChanges() {
+        added.clear();
+        removed.clear();
+        ids = null;
+        idSet = null;
+    }
+
+    private final class PageIterator implements Iterator<T> {
+        private final List<String> stored = ids();
+        private final Iterator<T> addedEntities = new ArrayList<>(added.values()).iterator();
+        private int position;
+        private Iterator<T> page = Collections.emptyIterator();
+        private T last;
+
+        @Override
+        public boolean hasNext() {
+            while (!page.hasNext() && position < stored.size()) {
+                page = nextPage().iterator();
+            }
+            return page.hasNext() || addedEntities.hasNext();
+        }
+
+        private List<T> nextPage() {
+            List<String> pageIDs = new ArrayList<>(pageSize);
+            while (pageIDs.size() < pageSize && position < stored.size()) {
+                String id = stored.get(position++);
+                if (!removed.contains(id) && !added.containsKey(id)) {
+                    pageIDs.add(id);
+                }
+            }
+            return manager.loadAll(type, pageIDs);
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            last = page.hasNext() ? page.next() : addedEntities.next();
+            return last;
+        }
+
+        @Override
+        public void remove() {
+            if (last == null) {
+                throw new IllegalStateException();
+            }
+            PersistentCollection.this.remove(last);
+            last = null;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.samples.assettransfer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.function.ToDoubleFunction;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Aggregates transaction metrics per transaction name and renders them in the Prometheus
+ * text exposition format, served on /metrics for the scrape job in test-network/prometheus-grafana.
+ */
+public final class PrometheusMetrics implements OrmMetrics {
+
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private static final double[] DURATION_BUCKETS = {0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5};
+
+    private final Map<String, Series> series = new ConcurrentSkipListMap<>();
+    private HttpServer server;
+
+    /**
+     * Totals for one transaction name. Transactions run concurrently, so updates and reads
+     * are synchronized on the series.
+     */
+    private static final class Series {
+        private long started;
+        private long count;
+        private long stateReads;
+        private long stateWrites;
+        private long stateDeletes;
+        private long scans;
+        private long scanRows;
+        private long bytesRead;
+        private long bytesWritten;
+        private long serializationNanos;
+        private long cacheHits;
+        private long cacheMisses;
+        private long durationNanos;
+        private final long[] durationBuckets = new long[DURATION_BUCKETS.length];
+
+        synchronized void add(TransactionMetrics metrics) {
+            count++;
+            stateReads += metrics.getStateReads();
+            stateWrites += metrics.getStateWrites();
+            stateDeletes += metrics.getStateDeletes();
+            scans += metrics.getScans();
+            scanRows += metrics.getScanRows();
+            bytesRead += metrics.getBytesRead();
+            bytesWritten += metrics.getBytesWritten();
+            serializationNanos += metrics.getSerializationNanos();
+            cacheHits += metrics.getCacheHits();
+            cacheMisses += metrics.getCacheMisses();
+            durationNanos += metrics.getElapsedNanos();
+            double seconds = metrics.getElapsedNanos() / 1e9;
+            for (int i = 0; i < DURATION_BUCKETS.length; i++) {
+                if (seconds <= DURATION_BUCKETS[i]) {
+                    durationBuckets[i]++;
+                }
+            }
+        }
+
+        synchronized void start() {
+            started++;
+        }
+
+        synchronized Series copy() {
+            Series copy = new Series();
+            copy.started = started;
+            copy.count = count;
+            copy.stateReads = stateReads;
+            copy.stateWrites = stateWrites;
+            copy.stateDeletes = stateDeletes;
+            copy.scans = scans;
+            copy.scanRows = scanRows;
+            copy.bytesRead = bytesRead;
+            copy.bytesWritten = bytesWritten;
+            copy.serializationNanos = serializationNanos;
+            copy.cacheHits = cacheHits;
+            copy.cacheMisses = cacheMisses;
+            copy.durationNanos = durationNanos;
+            System.arraycopy(durationBuckets, 0, copy.durationBuckets, 0, durationBuckets.length);
+            return copy;
+        }
+    }
+
+    @Override
+    public void record(String transaction, TransactionMetrics metrics) {
+        series.computeIfAbsent(transaction, name -> new Series()).add(metrics);
+    }
+
+    @Override
+    public void started(String transaction) {
+        series.computeIfAbsent(transaction, name -> new Series()).start();
+    }
+
+    /**
+     * @return every series in the Prometheus text exposition format
+     */
+    public String scrape() {
+        Map<String, Series> snapshot = new ConcurrentSkipListMap<>();
+        series.forEach((name, values) -> snapshot.put(name, values.copy()));
+        StringBuilder out = new StringBuilder();
+        counter(out, snapshot, "orm_transactions_started_total",
+                "Transactions started; those missing from orm_transactions_total threw or are still running.", s -> s.started);
+        counter(out, snapshot, "orm_transactions_total", "Transactions completed.", s -> s.count);
+        counter(out, snapshot, "orm_state_reads_total", "GetState calls.", s -> s.stateReads);
+        counter(out, snapshot, "orm_state_writes_total", "PutState calls.", s -> s.stateWrites);
+        counter(out, snapshot, "orm_state_deletes_total", "DelState calls.", s -> s.stateDeletes);
+        counter(out, snapshot, "orm_range_scans_total", "Range and partial composite key queries.", s -> s.scans);
+        counter(out, snapshot, "orm_range_scan_rows_total", "Rows read by range queries.", s -> s.scanRows);
+        counter(out, snapshot, "orm_bytes_read_total", "Bytes read from the ledger.", s -> s.bytesRead);
+        counter(out, snapshot, "orm_bytes_written_total", "Bytes written to the ledger.", s -> s.bytesWritten);
+        counter(out, snapshot, "orm_serialization_seconds_total", "Time spent encoding and decoding entities.",
+                s -> s.serializationNanos / 1e9);
+        counter(out, snapshot, "orm_cache_hits_total", "Identity map hits.", s -> s.cacheHits);
+        counter(out, snapshot, "orm_cache_misses_total", "Identity map misses.", s -> s.cacheMisses);
+        histogram(out, snapshot);
+        return out.toString();
+    }
+
+    private static void counter(StringBuilder out, Map<String, Series> snapshot, String name, String help,
+            ToDoubleFunction<Series> value) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" counter\n");
+        for (Map.Entry<String, Series> entry : snapshot.entrySet()) {
+            sample(out, name, entry.getKey(), null, value.applyAsDouble(entry.getValue()));
+        }
+    }
+
+    private static void histogram(StringBuilder out, Map<String, Series> snapshot) {
+        String name = "orm_transaction_duration_seconds";
+        out.append("# HELP ").append(name).append(" Time from the start of a transaction to its last write.\n");
+        out.append("# TYPE ").append(name).append(" histogram\n");
+        for (Map.Entry<String, Series> entry : snapshot.entrySet()) {
+            Series values = entry.getValue();
+            for (int i = 0; i < DURATION_BUCKETS.length; i++) {
+                sample(out, name + "_bucket", entry.getKey(), Double.toString(DURATION_BUCKETS[i]), values.durationBuckets[i]);
+            }
+            sample(out, name + "_bucket", entry.getKey(), "+Inf", values.count);
+            sample(out, name + "_sum", entry.getKey(), null, values.durationNanos / 1e9);
+            sample(out, name + "_count", entry.getKey(), null, values.count);
+        }
+    }
+
+    private static void sample(StringBuilder out, String name, String transaction, String le, double value) {
+        out.append(name).append("{transaction=\"").append(escape(transaction)).append('"');
+        if (le != null) {
+            out.append(",le=\"").append(le).append('"');
+        }
+        out.append("} ");
+        if (value == Math.rint(value)) {
+            out.append((long) value);
+        } else {
+            out.append(value);
+        }
+        out.append('\n');
+    }
+
+    private static String escape(String label) {
+        return label.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * Serves {@link #scrape()} on /metrics from a daemon thread.
+     */
+    public synchronized void serve(int port) {
+        if (server != null) {
+            return;
+        }
+        try {
+            server = HttpServer.create(new InetSocketAddress(port), 0);
+        } catch (IOException error) {
+            throw new UncheckedIOException("Cannot serve metrics on port " + port, error);
+        }
+        server.createContext("/metrics", exchange -> {
+            byte[] body = scrape().getBytes(UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream response = exchange.getResponseBody()) {
+                response.write(body);
+            }
+        });
+        server.setExecutor(Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "orm-metrics");
+            thread.setDaemon(true);
+            return thread;
+        }));
+        server.start();
+    }
+}
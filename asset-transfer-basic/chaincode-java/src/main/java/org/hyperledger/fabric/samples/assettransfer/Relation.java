@@ -0,0 +1,42 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.samples.assettransfer;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a String field holding the ID of another entity. When the annotated entity is saved
+ * or deleted, EntityManager keeps the inverse side of the relation in step, stored as
+ * selected by {@link #storage()}.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface Relation {
+
+    Class<?> target();
+
+    /**
+     * Name of the List&lt;String&gt; field on the target that lists the IDs of related entities.
+     * Required for {@link RelationStorage#EMBEDDED} relations only.
+     */
+    String inverse() default "";
+
+    RelationStorage storage() default RelationStorage.EMBEDDED;
+
+    /**
+     * Keeps the number of related entities and the totals of their {@link Summed} fields for
+     * each target. Every transaction adds its changes as one delta key of object type
+     * "&lt;target prefix&gt;&lt;prefix&gt;Stats" with the target ID and transaction ID as attributes,
+     * so concurrent transactions never write the same key; reads sum the target's delta keys.
+     */
+    boolean aggregated() default false;
+
+    /**
+     * When the target is loaded. EntityManager.setFetchType overrides it for one transaction.
+     */
+    FetchType fetch() default FetchType.LAZY;
+}
@@ -0,0 +1,61 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.samples.assettransfer;
+
+import java.util.Collections;
+import java.util.List;
+
+import com.owlike.genson.stream.ObjectWriter;
+
+/**
+ * Number of entities related to a target through an aggregated {@link Relation}, and the
+ * totals of their {@link Summed} fields, as summed from the target's delta keys.
+ */
+public final class RelationStats implements JsonResponse.Writable {
+
+    private final String targetID;
+    private final List<String> fields;
+    private final long[] totals;
+
+    RelationStats(String targetID, List<String> fields, long[] totals) {
+        this.targetID = targetID;
+        this.fields = fields;
+        this.totals = totals;
+    }
+
+    public String getTargetID() {
+        return targetID;
+    }
+
+    public long getCount() {
+        return totals[0];
+    }
+
+    /**
+     * @return the total of the given {@link Summed} field
+     * @throws IllegalArgumentException if the field is not summed
+     */
+    public long getSum(String field) {
+        int index = fields.indexOf(field);
+        if (index < 0) {
+            throw new IllegalArgumentException(field + " is not a @Summed field");
+        }
+        return totals[index + 1];
+    }
+
+    public List<String> getFields() {
+        return Collections.unmodifiableList(fields);
+    }
+
+    @Override
+    public void writeJSON(ObjectWriter writer) {
+        writer.beginObject()
+                .writeString("id", targetID)
+                .writeNumber("count", totals[0]);
+        for (int i = 0; i < fields.size(); i++) {
+            writer.writeNumber(fields.get(i), totals[i + 1]);
+        }
+        writer.endObject();
+    }
+}
@@ -0,0 +1,22 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.samples.assettransfer;
+
+/**
+ * How EntityManager stores the inverse side of a {@link Relation}.
+ */
+public enum RelationStorage {
+
+    /**
+     * A list of IDs embedded in the target entity, rewritten with the target on every change.
+     */
+    EMBEDDED,
+
+    /**
+     * One composite key per related pair, of object type "&lt;target prefix&gt;&lt;prefix&gt;" with
+     * the target ID and the entity ID as attributes. Changing a relation writes two small keys
+     * and leaves the target entity untouched.
+     */
+    EDGE
+}
@@ -0,0 +1,112 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.samples.assettransfer;
+
+/**
+ * What one transaction's {@link EntityManager} asked of the peer: every state read, write,
+ * delete and range scan is a round trip from the chaincode, so these counts, rather than the
+ * work done in the chaincode itself, mostly decide endorsement latency.
+ */
+public final class TransactionMetrics {
+
+    private final long startNanos = System.nanoTime();
+    private long elapsedNanos = -1;
+
+    private int stateReads;
+    private int stateWrites;
+    private int stateDeletes;
+    private int scans;
+    private int scanRows;
+    private long bytesRead;
+    private long bytesWritten;
+    private long serializationNanos;
+    private int cacheHits;
+    private int cacheMisses;
+
+    void read(byte[] value) {
+        stateReads++;
+        bytesRead += value == null ? 0 : value.length;
+    }
+
+    void write(byte[] value) {
+        stateWrites++;
+        bytesWritten += value.length;
+    }
+
+    void delete() {
+        stateDeletes++;
+    }
+
+    void scan() {
+        scans++;
+    }
+
+    void scanRow(byte[] value) {
+        scanRows++;
+        bytesRead += value.length;
+    }
+
+    /**
+     * Adds the time spent encoding or decoding since startNanos.
+     */
+    void serialized(long startNanos) {
+        serializationNanos += System.nanoTime() - startNanos;
+    }
+
+    /**
+     * Stops the clock, at the end of the transaction.
+     */
+    void finish(int hits, int misses) {
+        cacheHits = hits;
+        cacheMisses = misses;
+        elapsedNanos = System.nanoTime() - startNanos;
+    }
+
+    /**
+     * @return the time from the start of the transaction to its last write, or -1 while it is running
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public int getStateReads() {
+        return stateReads;
+    }
+
+    public int getStateWrites() {
+        return stateWrites;
+    }
+
+    public int getStateDeletes() {
+        return stateDeletes;
+    }
+
+    public int getScans() {
+        return scans;
+    }
+
+    public int getScanRows() {
+        return scanRows;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    public long getSerializationNanos() {
+        return serializationNanos;
+    }
+
+    public int getCacheHits() {
+        return cacheHits;
+    }
+
+    public int getCacheMisses() {
+        return cacheMisses;
+    }
+}
@@ -6,9 +6,13 @@ package org.hyperledger.fabric.samples.assettransfer;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import java.util.Arrays;
+
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 
+import com.owlike.genson.Genson;
+
 public final class AssetTest {
 
     @Nested
@@ -65,6 +69,17 @@ public final class AssetTest {
         }
     }
 
+    @Test
+    public void streamsAnArrayOfAssets() {
+        Asset assetA = new Asset("asset1", "Blue", 20, "Guy", 100);
+        Asset assetB = new Asset("asset2", "Red", 40, "Lady", 200);
+
+        String json = JsonResponse.ofArray(new Genson(), Arrays.asList(assetA, assetB));
+
+        assertThat(json).isEqualTo("[{\"assetID\":\"asset1\",\"color\":\"Blue\",\"size\":20,\"ownerID\":\"Guy\",\"appraisedValue\":100,\"version\":0},"
+                + "{\"assetID\":\"asset2\",\"color\":\"Red\",\"size\":40,\"ownerID\":\"Lady\",\"appraisedValue\":200,\"version\":0}]");
+    }
+
     @Test
     public void toStringIdentifiesAsset() {
         Asset asset = new Asset("asset1", "Blue", 20, "Guy", 100);
@@ -0,0 +1,94 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.assettransfer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+import java.util.Arrays;
+
+import org.hyperledger.fabric.shim.ChaincodeException;
+import org.junit.jupiter.api.Test;
+
+import com.owlike.genson.Genson;
+
+public final class EntityCodecTest {
+
+    private final Genson genson = new Genson();
+    private final JsonEntityCodec<Asset> assetJSON = new JsonEntityCodec<>(Asset.class, genson);
+    private final AssetBinaryCodec assetBinary = new AssetBinaryCodec(assetJSON);
+    private final OwnerBinaryCodec ownerBinary = new OwnerBinaryCodec(new JsonEntityCodec<>(Owner.class, genson));
+
+    @Test
+    public void roundTripsAssets() {
+        Asset asset = new Asset("asset1", "Blue", -20, null, 1 << 30);
+
+        Asset decoded = assetBinary.decode(assetBinary.encode(asset));
+
+        assertThat(decoded.getAssetID()).isEqualTo("asset1");
+        assertThat(decoded.getColor()).isEqualTo("Blue");
+        assertThat(decoded.getSize()).isEqualTo(-20);
+        assertThat(decoded.getOwnerID()).isNull();
+        assertThat(decoded.getAppraisedValue()).isEqualTo(1 << 30);
+        assertThat(decoded.getVersion()).isZero();
+    }
+
+    @Test
+    public void roundTripsVersions() {
+        Asset asset = assetJSON.decode(
+                "{\"assetID\":\"asset1\",\"ownerID\":\"owner1\",\"version\":9000000000}".getBytes(UTF_8));
+
+        assertThat(asset.getVersion()).isEqualTo(9_000_000_000L);
+        assertThat(assetBinary.decode(assetBinary.encode(asset)).getVersion()).isEqualTo(9_000_000_000L);
+    }
+
+    @Test
+    public void readsBinaryValuesWrittenBeforeVersioning() {
+        byte[] encoded = assetBinary.encode(new Asset("asset1", "Blue", 20, "owner1", 100));
+
+        Asset decoded = assetBinary.decode(Arrays.copyOf(encoded, encoded.length - 1));
+
+        assertThat(decoded.getAppraisedValue()).isEqualTo(100);
+        assertThat(decoded.getVersion()).isZero();
+    }
+
+    @Test
+    public void roundTripsOwners() {
+        Owner owner = new Owner("owner1", "Siobhán", "Smith");
+
+        Owner decoded = ownerBinary.decode(ownerBinary.encode(owner));
+
+        assertThat(decoded.getOwnerID()).isEqualTo("owner1");
+        assertThat(decoded.getName()).isEqualTo("Siobhán");
+        assertThat(decoded.getLastName()).isEqualTo("Smith");
+    }
+
+    @Test
+    public void isSmallerThanJSON() {
+        Asset asset = new Asset("asset1", "Blue", 20, "owner1", 100);
+
+        assertThat(assetBinary.encode(asset).length).isLessThan(assetJSON.encode(asset).length / 2);
+    }
+
+    @Test
+    public void readsLegacyJSON() {
+        byte[] legacy = "{\"AppraisedValue\":300,\"assetID\":\"asset1\",\"color\":\"blue\",\"ownerID\":\"owner1\",\"size\":5}".getBytes(UTF_8);
+
+        Asset decoded = assetBinary.decode(legacy);
+
+        assertThat(decoded.getAssetID()).isEqualTo("asset1");
+        assertThat(decoded.getAppraisedValue()).isEqualTo(300);
+    }
+
+    @Test
+    public void rejectsTruncatedValues() {
+        byte[] encoded = assetBinary.encode(new Asset("asset1", "Blue", 20, "owner1", 100));
+
+        Throwable thrown = catchThrowable(() -> assetBinary.decode(Arrays.copyOf(encoded, encoded.length - 2)));
+
+        assertThat(thrown).isInstanceOf(ChaincodeException.class);
+    }
+}
@@ -0,0 +1,1098 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.assettransfer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.hyperledger.fabric.protos.peer.ChaincodeShim.ChaincodeMessage;
+import org.hyperledger.fabric.protos.peer.ChaincodeShim.QueryResponseMetadata;
+import org.hyperledger.fabric.shim.ChaincodeException;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
+import org.json.JSONObject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import com.owlike.genson.Genson;
+
+public final class EntityManagerTest {
+
+    private final Genson genson = new Genson();
+    private final EntityRegistry registry = new EntityRegistry(genson).register(Asset.class).register(Owner.class);
+    private final Map<String, String> ledger = new TreeMap<>();
+    private ChaincodeStub stub;
+
+    private final class MockKeyValue implements KeyValue {
+
+        private final String key;
+        private final String value;
+
+        MockKeyValue(final String key, final String value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override
+        public String getKey() {
+            return this.key;
+        }
+
+        @Override
+        public String getStringValue() {
+            return this.value;
+        }
+
+        @Override
+        public byte[] getValue() {
+            return this.value.getBytes();
+        }
+    }
+
+    private final class MockResultsIterator implements QueryResultsIterator<KeyValue> {
+
+        private final List<KeyValue> results = new ArrayList<>();
+        private boolean closed;
+
+        MockResultsIterator(final String prefix) {
+            for (Map.Entry<String, String> entry : ledger.entrySet()) {
+                if (entry.getKey().startsWith(prefix)) {
+                    results.add(new MockKeyValue(entry.getKey(), entry.getValue()));
+                }
+            }
+        }
+
+        @Override
+        public Iterator<KeyValue> iterator() {
+            return results.iterator();
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    @BeforeEach
+    public void setUp() {
+        stub = mock(ChaincodeStub.class);
+        when(stub.getTxId()).thenReturn("tx1");
+        when(stub.createCompositeKey(anyString(), any())).thenAnswer(invocation -> {
+            Object[] args = invocation.getArguments();
+            String[] attributes = Arrays.copyOfRange(args, 1, args.length, String[].class);
+            return new CompositeKey((String) args[0], attributes);
+        });
+        when(stub.getState(anyString())).thenAnswer(invocation -> ledger.getOrDefault(invocation.getArgument(0), "").getBytes(UTF_8));
+        when(stub.getStateByPartialCompositeKey(anyString()))
+                .thenAnswer(invocation -> new MockResultsIterator(new CompositeKey(invocation.getArgument(0)).toString()));
+        when(stub.getStateByPartialCompositeKey(any(CompositeKey.class)))
+                .thenAnswer(invocation -> new MockResultsIterator(invocation.getArgument(0).toString()));
+        when(stub.splitCompositeKey(anyString())).thenAnswer(invocation -> CompositeKey.parseCompositeKey(invocation.getArgument(0)));
+    }
+
+    private String key(final String objectType, final String id) {
+        return new CompositeKey(objectType, id).toString();
+    }
+
+    private void putOwner(final Owner owner) {
+        ledger.put(key("Owner", owner.getOwnerID()), genson.serialize(owner));
+    }
+
+    private void putAsset(final Asset asset) {
+        ledger.put(key("Asset", asset.getAssetID()), genson.serialize(asset));
+        ledger.put(edgeKey(asset.getOwnerID(), asset.getAssetID()), "\u0000");
+    }
+
+    private String edgeKey(final String ownerID, final String assetID) {
+        return new CompositeKey("OwnerAsset", ownerID, assetID).toString();
+    }
+
+    private EntityContext context() {
+        EntityContext ctx = mock(EntityContext.class);
+        when(ctx.getStub()).thenReturn(stub);
+        when(ctx.getEntityManager()).thenReturn(new EntityManager(stub, registry, true));
+        return ctx;
+    }
+
+    private String deltaKey(final String ownerID, final String txID) {
+        return new CompositeKey("OwnerAssetStats", ownerID, txID).toString();
+    }
+
+    @Nested
+    class WriteBehind {
+
+        @Test
+        public void defersWritesUntilFlush() {
+            EntityManager manager = new EntityManager(stub, registry, true);
+
+            manager.save(new Owner("owner1", "Tomoko", "Smith"));
+
+            verify(stub, never()).putState(anyString(), any(byte[].class));
+            manager.flush();
+            verify(stub).putState(key("Owner", "owner1"),
+                    "{\"lastName\":\"Smith\",\"name\":\"Tomoko\",\"ownerID\":\"owner1\"}".getBytes(UTF_8));
+        }
+
+        @Test
+        public void transferMovesOneEdgeWithoutRewritingOwners() {
+            putOwner(new Owner("owner1", "Tomoko", "Smith"));
+            putOwner(new Owner("owner2", "Brad", "Jones"));
+            putAsset(new Asset("asset1", "blue", 5, "owner1", 300));
+            EntityManager manager = new EntityManager(stub, registry, true);
+
+            Asset asset = manager.loadAsset("asset1");
+            asset.setOwner(manager.loadOwner("owner2"));
+            manager.flush();
+
+            verify(stub, times(1)).putState(key("Asset", "asset1"),
+                    "{\"AppraisedValue\":300,\"assetID\":\"asset1\",\"color\":\"blue\",\"ownerID\":\"owner2\",\"size\":5,\"version\":1}".getBytes(UTF_8));
+            verify(stub, times(1)).putState(edgeKey("owner2", "asset1"), new byte[] {0});
+            verify(stub, times(1)).delState(edgeKey("owner1", "asset1"));
+            verify(stub).putState(deltaKey("owner1", "tx1"), "[-1,-300]".getBytes(UTF_8));
+            verify(stub).putState(deltaKey("owner2", "tx1"), "[1,300]".getBytes(UTF_8));
+            verify(stub, times(4)).putState(anyString(), any(byte[].class));
+        }
+
+        @Test
+        public void deleteDiscardsPendingWrite() {
+            putOwner(new Owner("owner1", "Tomoko", "Smith"));
+            EntityManager manager = new EntityManager(stub, registry, true);
+            Asset asset = new Asset("asset1", "blue", 5, "owner1", 300);
+            manager.save(asset);
+            putAsset(asset);
+
+            manager.deleteAsset("asset1");
+            manager.flush();
+
+            verify(stub, never()).putState(key("Asset", "asset1"), genson.serialize(asset).getBytes(UTF_8));
+            verify(stub).delState(key("Asset", "asset1"));
+        }
+    }
+
+    @Nested
+    class ReadThrough {
+
+        @Test
+        public void returnsOneInstancePerKey() {
+            putOwner(new Owner("owner1", "Tomoko", "Smith"));
+            EntityManager manager = new EntityManager(stub, registry, true);
+
+            Owner first = manager.loadOwner("owner1");
+            Owner second = manager.loadOwner("owner1");
+
+            assertThat(second).isSameAs(first);
+            verify(stub, times(1)).getState(key("Owner", "owner1"));
+            assertThat(manager.getCacheHits()).isEqualTo(1);
+            assertThat(manager.getCacheMisses()).isEqualTo(1);
+        }
+
+        @Test
+        public void remembersMissingKeys() {
+            EntityManager manager = new EntityManager(stub, registry, true);
+
+            assertThat(manager.AssetExists("asset1")).isFalse();
+            assertThat(manager.AssetExists("asset1")).isFalse();
+
+            verify(stub, times(1)).getState(key("Asset", "asset1"));
+        }
+
+        @Test
+        public void seesEntitiesSavedInTheSameTransaction() {
+            putOwner(new Owner("owner1", "Tomoko", "Smith"));
+            EntityManager manager = new EntityManager(stub, registry, true);
+            assertThat(manager.AssetExists("asset1")).isFalse();
+
+            Asset asset = new Asset("asset1", "blue", 5, "owner1", 300);
+            manager.save(asset);
+
+            assertThat(manager.loadAsset("asset1")).isSameAs(asset);
+            assertThat(manager.loadOwner("owner1").assetIDs()).containsExactly("asset1");
+            assertThat(ledger).doesNotContainKey(edgeKey("owner1", "asset1"));
+            verify(stub, times(1)).getState(key("Owner", "owner1"));
+        }
+    }
+
+    @Nested
+    class BatchLoading {
+
+        @BeforeEach
+        public void putAssets() {
+            putOwner(new Owner("owner1", "Tomoko", "Smith"));
+            for (int i = 1; i <= 4; i++) {
+                putAsset(new Asset("asset" + i, "blue", 5, "owner1", 300));
+            }
+        }
+
+        @Test
+        public void readsEachKeyOnceAndKeepsRequestOrder() {
+            EntityManager manager = new EntityManager(stub, registry, true);
+
+            List<Asset> assets = manager.loadAssets(Arrays.asList("asset3", "asset1", "asset3"));
+
+            assertThat(assets).extracting(Asset::getAssetID).containsExactly("asset3", "asset1", "asset3");
+            assertThat(assets.get(0)).isSameAs(assets.get(2));
+            verify(stub, times(1)).getState(key("Asset", "asset3"));
+            verify(stub, times(1)).getState(key("Asset", "asset1"));
+        }
+
+        @Test
+        public void readsSmallBatchesKeyByKey() {
+            EntityManager manager = new EntityManager(stub, registry, true);
+
+            List<Asset> assets = manager.loadAssets(Arrays.asList("asset2", "asset4"));
+
+            assertThat(assets).extracting(Asset::getAssetID).containsExactly("asset2", "asset4");
+            verify(stub, never()).getStateByPartialCompositeKey(anyString());
+        }
+
+        @Test
+        public void rejectsMissingAssets() {
+            EntityManager manager = new EntityManager(stub, registry, true);
+
+            Throwable thrown = catchThrowable(() -> manager.loadAssets(Arrays.asList("asset1", "asset9")));
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class).hasMessage("ASSET DOES NOT EXIST");
+            assertThat(manager.AssetExists("asset9")).isFalse();
+            verify(stub, times(1)).getState(key("Asset", "asset9"));
+        }
+
+        @Test
+        public void neverScansTheObjectType() {
+            EntityManager manager = new EntityManager(stub, registry, true);
+            List<String> ids = new ArrayList<>();
+            for (int i = 1; i <= 40; i++) {
+                ids.add("asset" + i);
+            }
+
+            assertThat(manager.existing(Asset.class, ids)).containsExactly("asset1", "asset2", "asset3", "asset4");
+            verify(stub, never()).getStateByPartialCompositeKey(anyString());
+            verify(stub, never()).getStateByPartialCompositeKey(any(CompositeKey.class));
+        }
+    }
+
+    @Nested
+    class Indexes {
+
+        @BeforeEach
+        public void storeWrites() {
+            doAnswer(invocation -> ledger.put(invocation.getArgument(0), new String((byte[]) invocation.getArgument(1), UTF_8)))
+                    .when(stub).putState(anyString(), any(byte[].class));
+            doAnswer(invocation -> ledger.remove(invocation.getArgument(0))).when(stub).delState(anyString());
+            putOwner(new Owner("owner1", "Tomoko", "Smith"));
+            EntityManager manager = new EntityManager(stub, registry, true);
+            manager.save(new Asset("asset1", "blue", 5, "owner1", 300));
+            manager.save(new Asset("asset2", "red", 5, "owner1", 300));
+            manager.save(new Asset("asset3", "blue", 10, "owner1", 300));
+            manager.flush();
+        }
+
+        @Test
+        public void findsEntitiesByIndexedField() {
+            EntityManager manager = new EntityManager(stub, registry, true);
+
+            assertThat(manager.findBy(Asset.class, "color", "blue")).extracting(Asset::getAssetID).containsExactly("asset1", "asset3");
+            assertThat(manager.findBy(Asset.class, "size", 5)).extracting(Asset::getAssetID).containsExactly("asset1", "asset2");
+            verify(stub, never()).getStateByPartialCompositeKey("Asset");
+        }
+
+        @Test
+        public void movesIndexKeysOnUpdate() {
+            EntityManager manager = new EntityManager(stub, registry, true);
+            Asset asset = manager.loadAsset("asset1");
+            asset.setColor("green");
+            manager.save(asset);
+            manager.flush();
+
+            verify(stub).delState(new CompositeKey("Asset~color", "blue", "asset1").toString());
+            verify(stub, never()).delState(new CompositeKey("Asset~size", "5", "asset1").toString());
+            EntityManager next = new EntityManager(stub, registry, true);
+            assertThat(next.findBy(Asset.class, "color", "blue")).extracting(Asset::getAssetID).containsExactly("asset3");
+            assertThat(next.findBy(Asset.class, "color", "green")).extracting(Asset::getAssetID).containsExactly("asset1");
+        }
+
+        @Test
+        public void removesIndexKeysOnDelete() {
+            EntityManager manager = new EntityManager(stub, registry, true);
+            manager.deleteAsset("asset3");
+            manager.flush();
+
+            assertThat(ledger).doesNotContainKeys(new CompositeKey("Asset~color", "blue", "asset3").toString(),
+                    new CompositeKey("Asset~size", "10", "asset3").toString(), edgeKey("owner1", "asset3"));
+            assertThat(new EntityManager(stub, registry, true).loadOwner("owner1").assetIDs())
+                    .containsExactly("asset1", "asset2");
+        }
+
+        @Test
+        public void rejectsFieldsWithoutIndex() {
+            EntityManager manager = new EntityManager(stub, registry, true);
+
+            Throwable thrown = catchThrowable(() -> manager.findBy(Asset.class, "ownerID", "owner1"));
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class).hasMessage("Field ownerID is not indexed");
+        }
+    }
+
+    @Nested
+    class DirtyTracking {
+
+        @BeforeEach
+        public void putAsset() {
+            putOwner(new Owner("owner1", "Tomoko", "Smith"));
+            EntityManagerTest.this.putAsset(new Asset("asset1", "blue", 5, "owner1", 300));
+        }
+
+        @Test
+        public void skipsUnchangedEntities() {
+            EntityManager manager = new EntityManager(stub, registry, true);
+            Asset asset = manager.loadAsset("asset1");
+            asset.setColor("blue");
+            asset.setSize(5);
+
+            manager.save(asset);
+            manager.flush();
+
+            assertThat(manager.isDirty(asset)).isFalse();
+            verify(stub, never()).putState(anyString(), any(byte[].class));
+        }
+
+        @Test
+        public void leavesRelationsAloneWhenOnlyOtherFieldsChange() {
+            EntityManager manager = new EntityManager(stub, registry, true);
+            Asset asset = manager.loadAsset("asset1");
+            asset.setAppraisedValue(400);
+            assertThat(manager.isDirty(asset)).isTrue();
+
+            manager.save(asset);
+            manager.flush();
+
+            verify(stub, times(2)).putState(anyString(), any(byte[].class));
+            verify(stub).putState(deltaKey("owner1", "tx1"), "[0,100]".getBytes(UTF_8));
+            verify(stub).putState(key("Asset", "asset1"),
+                    "{\"AppraisedValue\":400,\"assetID\":\"asset1\",\"color\":\"blue\",\"ownerID\":\"owner1\",\"size\":5,\"version\":1}".getBytes(UTF_8));
+        }
+
+        @Test
+        public void skipsSecondSaveOfNewEntity() {
+            EntityManager manager = new EntityManager(stub, registry, false);
+            Asset asset = new Asset("asset2", "red", 5, "owner1", 300);
+
+            manager.save(asset);
+            manager.save(asset);
+
+            verify(stub, times(1)).putState(key("Asset", "asset2"), genson.serialize(asset).getBytes(UTF_8));
+        }
+    }
+
+    @Nested
+    class Versioning {
+
+        @BeforeEach
+        public void putAsset() {
+            putOwner(new Owner("owner1", "Tomoko", "Smith"));
+            putOwner(new Owner("owner2", "Brad", "Jones"));
+            ledger.put(key("Asset", "asset1"),
+                    "{\"AppraisedValue\":300,\"assetID\":\"asset1\",\"color\":\"blue\",\"ownerID\":\"owner1\",\"size\":5,\"version\":7}");
+        }
+
+        @Test
+        public void incrementsOncePerTransaction() {
+            EntityManager manager = new EntityManager(stub, registry, true);
+            Asset asset = manager.loadAsset("asset1");
+
+            asset.setColor("red");
+            manager.save(asset);
+            asset.setOwner(manager.loadOwner("owner2"));
+
+            assertThat(asset.getVersion()).isEqualTo(8);
+        }
+
+        @Test
+        public void rejectsStaleExpectedVersion() {
+            EntityManager manager = new EntityManager(stub, registry, true);
+            Asset asset = manager.loadAsset("asset1");
+
+            manager.checkVersion(asset, 7);
+            Throwable thrown = catchThrowable(() -> manager.checkVersion(asset, 6));
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class).hasMessage("VERSION CONFLICT: expected 6 but found 7");
+            assertThat(((ChaincodeException) thrown).getPayload()).isEqualTo("VERSION_CONFLICT".getBytes(UTF_8));
+        }
+    }
+
+    @Nested
+    class Stats {
+
+        @BeforeEach
+        public void putDeltas() {
+            putOwner(new Owner("owner1", "Tomoko", "Smith"));
+            ledger.put(deltaKey("owner1", "tx0"), "[2,500]");
+            ledger.put(deltaKey("owner1", "tx00"), "[-1,-200]");
+            ledger.put(deltaKey("owner10", "tx0"), "[5,5000]");
+        }
+
+        @Test
+        public void sumsDeltaKeysOfOneOwner() {
+            EntityManager manager = new EntityManager(stub, registry, true);
+            manager.save(new Asset("asset1", "blue", 5, "owner1", 300));
+
+            RelationStats stats = manager.stats(Asset.class, manager.loadOwner("owner1"));
+
+            assertThat(stats.getCount()).isEqualTo(2);
+            assertThat(stats.getSum("appraisedValue")).isEqualTo(600);
+            verify(stub, never()).putState(eq(key("Owner", "owner1")), any(byte[].class));
+        }
+
+        @Test
+        public void compactsIntoOneKey() {
+            EntityManager manager = new EntityManager(stub, registry, true);
+
+            RelationStats stats = manager.compactStats(Asset.class, manager.loadOwner("owner1"));
+            manager.flush();
+
+            assertThat(stats.getCount()).isEqualTo(1);
+            verify(stub).delState(deltaKey("owner1", "tx0"));
+            verify(stub).delState(deltaKey("owner1", "tx00"));
+            verify(stub, never()).delState(deltaKey("owner10", "tx0"));
+            verify(stub).putState(deltaKey("owner1", "tx1"), "[1,300]".getBytes(UTF_8));
+        }
+
+        @Test
+        public void backfillsAssetsStoredBeforeStatistics() {
+            InMemoryChaincodeStub peer = new InMemoryChaincodeStub();
+            peer.beginTransaction();
+            EntityManager manager = new EntityManager(peer, registry, true);
+            manager.save(new Owner("owner1", "Tomoko", "Smith"));
+            manager.save(new Owner("owner2", "Brad", "Jones"));
+            manager.save(new Asset("asset2", "red", 5, "owner1", 200));
+            manager.flush();
+            // Stored by an earlier version, without an edge or a statistics delta.
+            peer.putState(key("Asset", "asset1"), genson.serialize(new Asset("asset1", "blue", 5, "owner1", 300)).getBytes(UTF_8));
+            peer.commit();
+
+            peer.beginTransaction();
+            EntityManager reindex = new EntityManager(peer, registry, true);
+            assertThat(reindex.reindex(Asset.class)).isEqualTo(2);
+            reindex.flush();
+            peer.commit();
+            peer.beginTransaction();
+            EntityManager transfer = new EntityManager(peer, registry, true);
+            transfer.loadAsset("asset1").setOwner(transfer.loadOwner("owner2"));
+            transfer.flush();
+            peer.commit();
+            peer.beginTransaction();
+
+            EntityManager reader = EntityManager.readOnly(peer, registry);
+            RelationStats previous = reader.stats(Asset.class, reader.loadOwner("owner1"));
+            RelationStats current = reader.stats(Asset.class, reader.loadOwner("owner2"));
+            assertThat(previous.getCount()).isEqualTo(1);
+            assertThat(previous.getSum("appraisedValue")).isEqualTo(200);
+            assertThat(current.getCount()).isEqualTo(1);
+            assertThat(current.getSum("appraisedValue")).isEqualTo(300);
+        }
+    }
+
+    @Nested
+    class BulkCreate {
+
+        private final AssetTransfer contract = new AssetTransfer();
+
+        @BeforeEach
+        public void putOwners() {
+            putOwner(new Owner("owner3", "Max", "Doe"));
+        }
+
+        @Test
+        public void writesEachOwnerOnce() {
+            EntityContext ctx = context();
+
+            String result = contract.BulkCreate(ctx, "{\"owners\":[[\"owner1\",\"Tomoko\",\"Smith\"]],"
+                    + "\"assets\":[[\"asset1\",\"blue\",5,\"owner1\",300],[\"asset2\",\"red\",5,\"owner1\",200],"
+                    + "[\"asset3\",\"green\",10,\"owner3\",100]]}");
+            verify(stub, never()).putState(anyString(), any(byte[].class));
+            contract.afterTransaction(ctx, result);
+
+            assertThat(result).isEqualTo("{\"owners\":1,\"assets\":3}");
+            verify(stub, times(1)).putState(eq(key("Owner", "owner1")), any(byte[].class));
+            verify(stub, never()).putState(eq(key("Owner", "owner3")), any(byte[].class));
+            verify(stub).putState(deltaKey("owner1", "tx1"), "[2,500]".getBytes(UTF_8));
+            verify(stub).putState(deltaKey("owner3", "tx1"), "[1,100]".getBytes(UTF_8));
+        }
+
+        @Test
+        public void checksLargeBatchesKeyByKey() {
+            putAsset(new Asset("asset07", "blue", 5, "owner3", 300));
+            // A scan cut short by the peer's query limit would not reach the existing asset.
+            when(stub.getStateByPartialCompositeKey("Asset")).thenAnswer(invocation -> new MockResultsIterator("\u0000none"));
+            StringBuilder assets = new StringBuilder();
+            for (int i = 1; i <= 20; i++) {
+                assets.append(i == 1 ? "" : ",").append(String.format("[\"asset%02d\",\"blue\",5,\"owner3\",300]", i));
+            }
+            EntityContext ctx = context();
+
+            Throwable thrown = catchThrowable(() -> contract.BulkCreate(ctx, "{\"assets\":[" + assets + "]}"));
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class).hasMessage("ASSET ALREADY EXISTS: asset07");
+            verify(stub, never()).getStateByPartialCompositeKey("Asset");
+            verify(stub, times(1)).getState(key("Asset", "asset20"));
+        }
+
+        @Test
+        public void rejectsAssetsOfUnknownOwners() {
+            EntityContext ctx = context();
+
+            Throwable thrown = catchThrowable(() -> contract.BulkCreate(ctx,
+                    "{\"assets\":[[\"asset1\",\"blue\",5,\"owner9\",300]]}"));
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class).hasMessage("OWNER DOES NOT EXIST: owner9");
+        }
+
+        @Test
+        public void rejectsDuplicateRows() {
+            EntityContext ctx = context();
+
+            Throwable thrown = catchThrowable(() -> contract.BulkCreate(ctx,
+                    "{\"owners\":[[\"owner1\",\"Tomoko\",\"Smith\"],[\"owner1\",\"Brad\",\"Jones\"]]}"));
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class).hasMessage("DUPLICATE OWNER owner1");
+        }
+
+        @Test
+        public void rejectsMalformedPayloads() {
+            EntityContext ctx = context();
+
+            Throwable thrown = catchThrowable(() -> contract.BulkCreate(ctx, "{\"owners\":[[\"owner1\"]]}"));
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class);
+            assertThat(((ChaincodeException) thrown).getPayload()).isEqualTo("INVALID_BATCH".getBytes(UTF_8));
+        }
+
+        @ParameterizedTest
+        @ValueSource(strings = {"\"abc\"", "99999999999", "5.5", "-1", "null"})
+        public void rejectsSizesThatAreNotWholeNumbers(String size) {
+            EntityContext ctx = context();
+
+            Throwable thrown = catchThrowable(() -> contract.BulkCreate(ctx,
+                    "{\"assets\":[[\"asset1\",\"blue\"," + size + ",\"owner3\",300]]}"));
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class).hasMessageStartingWith("INVALID SIZE ");
+            assertThat(((ChaincodeException) thrown).getPayload()).isEqualTo("INVALID_BATCH".getBytes(UTF_8));
+        }
+
+        @ParameterizedTest
+        @ValueSource(strings = {"\"abc\"", "99999999999", "5.5", "-300"})
+        public void rejectsAppraisedValuesThatAreNotWholeNumbers(String appraisedValue) {
+            EntityContext ctx = context();
+
+            Throwable thrown = catchThrowable(() -> contract.BulkCreate(ctx,
+                    "{\"assets\":[[\"asset1\",\"blue\",5,\"owner3\"," + appraisedValue + "]]}"));
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class).hasMessageStartingWith("INVALID APPRAISED VALUE ");
+            assertThat(((ChaincodeException) thrown).getPayload()).isEqualTo("INVALID_BATCH".getBytes(UTF_8));
+        }
+    }
+
+    @Nested
+    class TransferAssets {
+
+        private final AssetTransfer contract = new AssetTransfer();
+
+        @BeforeEach
+        public void putAssets() {
+            putOwner(new Owner("owner1", "Tomoko", "Smith"));
+            putOwner(new Owner("owner2", "Brad", "Jones"));
+            putAsset(new Asset("asset1", "blue", 5, "owner1", 300));
+            putAsset(new Asset("asset2", "red", 5, "owner1", 200));
+            putAsset(new Asset("asset3", "green", 10, "owner2", 100));
+        }
+
+        @Test
+        public void reportsEachAssetWithoutRewritingOwners() {
+            EntityContext ctx = context();
+
+            String result = contract.TransferAssets(ctx, new String[] {"asset1", "asset9", "asset3", "asset2"}, "owner2");
+            contract.afterTransaction(ctx, result);
+
+            assertThat(result).isEqualTo("[{\"assetID\":\"asset1\",\"transferred\":true},"
+                    + "{\"assetID\":\"asset9\",\"transferred\":false,\"error\":\"ASSET DOES NOT EXIST\",\"code\":\"ASSET_NOT_FOUND\"},"
+                    + "{\"assetID\":\"asset3\",\"transferred\":false,\"error\":\"OWNER ALREADY OWNS ASSET\",\"code\":\"OWNER_ALREADY_OWNS_ASSET\"},"
+                    + "{\"assetID\":\"asset2\",\"transferred\":true}]");
+            verify(stub, never()).putState(eq(key("Owner", "owner1")), any(byte[].class));
+            verify(stub, never()).putState(eq(key("Owner", "owner2")), any(byte[].class));
+            verify(stub).putState(deltaKey("owner1", "tx1"), "[-2,-500]".getBytes(UTF_8));
+            verify(stub).putState(deltaKey("owner2", "tx1"), "[2,500]".getBytes(UTF_8));
+            verify(stub).delState(edgeKey("owner1", "asset1"));
+            verify(stub).putState(eq(edgeKey("owner2", "asset2")), any(byte[].class));
+        }
+
+        @Test
+        public void readsLargeBatchesKeyByKey() {
+            String[] assetIDs = new String[20];
+            for (int i = 0; i < assetIDs.length; i++) {
+                assetIDs[i] = String.format("asset%02d", i + 10);
+                putAsset(new Asset(assetIDs[i], "blue", 5, "owner1", 300));
+            }
+            // A scan cut short by the peer's query limit would not reach the assets.
+            when(stub.getStateByPartialCompositeKey("Asset")).thenAnswer(invocation -> new MockResultsIterator("\u0000none"));
+            EntityContext ctx = context();
+
+            String result = contract.TransferAssets(ctx, assetIDs, "owner2");
+            contract.afterTransaction(ctx, result);
+
+            assertThat(result).doesNotContain("\"transferred\":false");
+            verify(stub, never()).getStateByPartialCompositeKey("Asset");
+            verify(stub).putState(deltaKey("owner2", "tx1"), "[20,6000]".getBytes(UTF_8));
+        }
+
+        @Test
+        public void failsTransferToUnknownOwner() {
+            Throwable thrown = catchThrowable(() -> contract.TransferAsset(context(), "asset1", "owner9"));
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class).hasMessage("OWNER DOES NOT EXIST");
+        }
+    }
+
+    @Nested
+    class RoundTrips {
+
+        private final InMemoryChaincodeStub peer = new InMemoryChaincodeStub();
+
+        @BeforeEach
+        public void populate() {
+            peer.beginTransaction();
+            EntityManager manager = new EntityManager(peer, registry, true);
+            for (int i = 1; i <= 3; i++) {
+                manager.save(new Owner("owner" + i, "Tomoko", "Smith"));
+            }
+            for (int i = 1; i <= 20; i++) {
+                manager.save(new Asset(String.format("asset%02d", i), "blue", 5, "owner1", 300));
+            }
+            manager.flush();
+            peer.commit();
+            peer.beginTransaction();
+            peer.resetCalls();
+        }
+
+        @Test
+        public void loadsABatchWithOneReadPerAsset() {
+            EntityManager manager = new EntityManager(peer, registry, true);
+            List<String> ids = new ArrayList<>();
+            for (int i = 1; i <= 20; i++) {
+                ids.add(String.format("asset%02d", i));
+            }
+
+            assertThat(manager.loadAssets(ids)).hasSize(20);
+
+            assertThat(peer.getCalls(ChaincodeMessage.Type.GET_STATE)).isEqualTo(20);
+            assertThat(peer.getCalls(ChaincodeMessage.Type.GET_STATE_BY_RANGE)).isZero();
+        }
+
+        @Test
+        public void loadsOwnersLazily() {
+            EntityManager manager = new EntityManager(peer, registry, true);
+
+            Asset asset = manager.loadAsset("asset01");
+            assertThat(peer.getCalls(ChaincodeMessage.Type.GET_STATE)).isEqualTo(1);
+
+            assertThat(asset.owner().getOwnerID()).isEqualTo("owner1");
+            assertThat(asset.owner()).isSameAs(manager.loadOwner("owner1"));
+            assertThat(peer.getCalls(ChaincodeMessage.Type.GET_STATE)).isEqualTo(2);
+        }
+
+        @Test
+        public void loadsOwnersWithAssetsWhenEager() {
+            EntityManager manager = new EntityManager(peer, registry, true);
+            manager.setFetchType(Asset.class, Owner.class, FetchType.EAGER);
+
+            Asset asset = manager.loadAsset("asset01");
+            asset.owner();
+
+            assertThat(peer.getCalls(ChaincodeMessage.Type.GET_STATE)).isEqualTo(2);
+            assertThat(manager.getCacheHits()).isPositive();
+        }
+
+        @Test
+        public void batchFetchesOwnersOfAssetsLoadedTogether() {
+            EntityManager manager = new EntityManager(peer, registry, true);
+            manager.setFetchType(Asset.class, Owner.class, FetchType.BATCH);
+            List<String> ids = new ArrayList<>();
+            for (int i = 1; i <= 20; i++) {
+                ids.add(String.format("asset%02d", i));
+            }
+
+            for (Asset asset : manager.loadAssets(ids)) {
+                asset.owner();
+            }
+            manager.loadAsset("asset01");
+
+            // One read per asset, and one for their only owner.
+            assertThat(peer.getCalls(ChaincodeMessage.Type.GET_STATE)).isEqualTo(21);
+        }
+
+        @Test
+        public void fetchesLargeScansInBatches() {
+            peer.setQueryBatchSize(8);
+            EntityManager manager = new EntityManager(peer, registry, true);
+
+            assertThat(manager.relatedIDs(Asset.class, manager.loadOwner("owner1"))).hasSize(20);
+
+            assertThat(peer.getCalls(ChaincodeMessage.Type.QUERY_STATE_NEXT)).isEqualTo(2);
+        }
+
+        @Test
+        public void pagesThroughOwnersWithBookmarks() {
+            EntityManager manager = new EntityManager(peer, registry, true);
+
+            String first = manager.viewDB(2, "");
+            String bookmark = new CompositeKey("Owner", "owner3").toString();
+            String second = manager.viewDB(2, bookmark);
+
+            assertThat(first).contains("\"fetchedRecordsCount\":2").doesNotContain("\"owner3\":");
+            assertThat(genson.deserialize(first, Map.class).get("bookmark")).isEqualTo(bookmark);
+            assertThat(second).contains("\"owner3\":[]").contains("\"bookmark\":\"\"");
+        }
+
+        @Test
+        public void recordsTheSameRoundTripsInMetrics() {
+            EntityManager manager = new EntityManager(peer, registry, true);
+            Asset asset = manager.loadAsset("asset01");
+            asset.setColor("red");
+            manager.save(asset);
+            asset.owner();
+            manager.relatedIDs(Asset.class, manager.loadOwner("owner1"));
+            manager.flush();
+
+            TransactionMetrics metrics = manager.finishMetrics();
+            assertThat((long) metrics.getStateReads()).isEqualTo(peer.getCalls(ChaincodeMessage.Type.GET_STATE));
+            assertThat((long) metrics.getStateWrites()).isEqualTo(peer.getCalls(ChaincodeMessage.Type.PUT_STATE));
+            assertThat((long) metrics.getStateDeletes()).isEqualTo(peer.getCalls(ChaincodeMessage.Type.DEL_STATE));
+            assertThat((long) metrics.getScans()).isEqualTo(peer.getCalls(ChaincodeMessage.Type.GET_STATE_BY_RANGE));
+            assertThat(metrics.getScanRows()).isEqualTo(20);
+            assertThat(metrics.getCacheHits()).isPositive();
+            assertThat(metrics.getElapsedNanos()).isPositive();
+
+            PrometheusMetrics prometheus = new PrometheusMetrics();
+            prometheus.record("UpdateAsset", metrics);
+            assertThat(prometheus.scrape())
+                    .contains("# TYPE orm_state_writes_total counter\n")
+                    .contains("orm_transactions_total{transaction=\"UpdateAsset\"} 1\n")
+                    .contains("orm_state_writes_total{transaction=\"UpdateAsset\"} " + metrics.getStateWrites() + "\n")
+                    .contains("orm_transaction_duration_seconds_bucket{transaction=\"UpdateAsset\",le=\"+Inf\"} 1\n");
+        }
+
+        @Test
+        public void writesOnlyOnFlush() {
+            EntityManager manager = new EntityManager(peer, registry, true);
+            Asset asset = manager.loadAsset("asset01");
+            asset.setColor("red");
+            manager.save(asset);
+            manager.save(asset);
+
+            assertThat(peer.getCalls(ChaincodeMessage.Type.PUT_STATE)).isZero();
+            manager.flush();
+            // The asset and its new color index entry; the old entry is deleted.
+            assertThat(peer.getCalls(ChaincodeMessage.Type.PUT_STATE)).isEqualTo(2);
+            assertThat(peer.getCalls(ChaincodeMessage.Type.DEL_STATE)).isEqualTo(1);
+        }
+
+        @Test
+        public void readsWithAReadOnlyManager() {
+            EntityManager manager = EntityManager.readOnly(peer, registry);
+
+            Owner owner = manager.loadAsset("asset01").owner();
+            assertThat(manager.loadRelated(Asset.class, owner)).hasSize(20);
+            manager.flush();
+
+            assertThat(manager.isReadOnly()).isTrue();
+            // The asset, its owner, and the owner's 19 other assets.
+            assertThat(peer.getCalls(ChaincodeMessage.Type.GET_STATE)).isEqualTo(21);
+            assertThat(peer.getCalls(ChaincodeMessage.Type.PUT_STATE)).isZero();
+        }
+
+        @Test
+        public void serializesReadAssetWithOneRead() {
+            EntityContext ctx = mock(EntityContext.class);
+            when(ctx.getEntityManager()).thenReturn(EntityManager.readOnly(peer, registry));
+            Asset asset = new AssetTransfer().ReadAsset(ctx, "asset01");
+
+            // The contract serializer starts from new JSONObject(result), which calls every public getter.
+            JSONObject json = new JSONObject(asset);
+
+            assertThat(json.getString("ownerID")).isEqualTo("owner1");
+            assertThat(json.has("owner")).isFalse();
+            assertThat(peer.getRoundTrips()).isEqualTo(1);
+        }
+
+        @Test
+        public void serializesOwnersWithoutScanningTheirAssets() {
+            EntityManager manager = EntityManager.readOnly(peer, registry);
+            Owner owner = manager.loadOwner("owner1");
+
+            // The contract serializer starts from new JSONObject(result), which calls every public getter.
+            JSONObject json = new JSONObject(owner);
+
+            assertThat(json.keySet()).containsExactlyInAnyOrder("ownerID", "name", "lastName");
+            assertThat(peer.getCalls(ChaincodeMessage.Type.GET_STATE)).isEqualTo(1);
+            assertThat(peer.getCalls(ChaincodeMessage.Type.GET_STATE_BY_RANGE)).isZero();
+        }
+
+        @Test
+        public void rejectsWritesWhenReadOnly() {
+            EntityManager manager = EntityManager.readOnly(peer, registry);
+            Asset asset = manager.loadAsset("asset01");
+            asset.setColor("red");
+
+            Throwable saved = catchThrowable(() -> manager.save(asset));
+            Throwable deleted = catchThrowable(() -> manager.deleteAsset("asset02"));
+
+            assertThat(saved).isInstanceOf(ChaincodeException.class).hasMessage("READ ONLY TRANSACTION");
+            assertThat(((ChaincodeException) saved).getPayload()).isEqualTo("READ_ONLY".getBytes(UTF_8));
+            assertThat(deleted).isInstanceOf(ChaincodeException.class).hasMessage("READ ONLY TRANSACTION");
+            assertThat(peer.getCalls(ChaincodeMessage.Type.PUT_STATE)).isZero();
+            assertThat(peer.getCalls(ChaincodeMessage.Type.DEL_STATE)).isZero();
+        }
+    }
+
+    @Nested
+    class OwnedAssets {
+
+        @BeforeEach
+        public void putAssets() {
+            putOwner(new Owner("owner1", "Tomoko", "Smith"));
+            putOwner(new Owner("owner2", "Brad", "Jones"));
+            for (int i = 1; i <= 20; i++) {
+                putAsset(new Asset(String.format("asset%02d", i), "blue", 5, "owner1", 300));
+            }
+        }
+
+        @Test
+        public void countsWithoutLoadingAssets() {
+            EntityManager manager = new EntityManager(stub, registry, true);
+
+            PersistentCollection<Asset> assets = manager.loadOwner("owner1").GetOwnedAssets();
+
+            assertThat(assets.isInitialized()).isFalse();
+            assertThat(assets).hasSize(20);
+            verify(stub, never()).getState(key("Asset", "asset01"));
+        }
+
+        @Test
+        public void loadsOnePageAtATime() {
+            EntityManager manager = new EntityManager(stub, registry, true);
+            Iterator<Asset> assets = manager.loadOwner("owner1").GetOwnedAssets().iterator();
+
+            assertThat(assets.next().getAssetID()).isEqualTo("asset01");
+
+            verify(stub).getState(key("Asset", "asset08"));
+            verify(stub, never()).getState(key("Asset", "asset09"));
+        }
+
+        @Test
+        public void transfersAddedAssetsOnSave() {
+            EntityManager manager = new EntityManager(stub, registry, true);
+            Owner owner = manager.loadOwner("owner2");
+            PersistentCollection<Asset> assets = owner.GetOwnedAssets();
+
+            assets.add(manager.loadAsset("asset03"));
+            assertThat(assets).extracting(Asset::getAssetID).containsExactly("asset03");
+            manager.save(owner);
+            manager.flush();
+
+            assertThat(assets.isDirty()).isFalse();
+            verify(stub).putState(edgeKey("owner2", "asset03"), new byte[] {0});
+            verify(stub).delState(edgeKey("owner1", "asset03"));
+        }
+
+        @Test
+        public void rejectsRemovingAnAssetFromItsOwner() {
+            EntityManager manager = new EntityManager(stub, registry, true);
+            Owner owner = manager.loadOwner("owner1");
+            owner.GetOwnedAssets().remove(manager.loadAsset("asset03"));
+
+            Throwable thrown = catchThrowable(() -> manager.save(owner));
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class).hasMessage("AN ASSET CANNOT BE LEFT WITHOUT AN OWNER");
+        }
+    }
+
+    @Nested
+    class EntryPoints {
+
+        private final AssetTransfer contract = new AssetTransfer();
+        private final InMemoryChaincodeStub peer = new InMemoryChaincodeStub();
+
+        /**
+         * Starts a transaction the way the contract router does: context first, then beforeTransaction.
+         */
+        private EntityContext begin(String function, String... args) {
+            peer.beginTransaction();
+            EntityContext ctx = (EntityContext) contract.createContext(peer.withInvocation("basic:" + function, args));
+            contract.beforeTransaction(ctx);
+            return ctx;
+        }
+
+        private void end(EntityContext ctx, Object result) {
+            contract.afterTransaction(ctx, result);
+            peer.commit();
+        }
+
+        @Test
+        public void writesSubmittedTransactionsWhenTheyFinish() {
+            EntityContext ctx = begin("CreateOwner", "owner1", "Tomoko", "Smith");
+            Owner owner = contract.CreateOwner(ctx, "owner1", "Tomoko", "Smith");
+
+            assertThat(ctx.getEntityManager().isReadOnly()).isFalse();
+            assertThat(ctx.getClientIdentity().getMSPID()).isEqualTo("Org1MSP");
+            assertThat(peer.getCalls(ChaincodeMessage.Type.PUT_STATE)).isZero();
+            end(ctx, owner);
+
+            ctx = begin("CreateAsset", "asset1", "blue", "5", "owner1", "300");
+            end(ctx, contract.CreateAsset(ctx, "asset1", "blue", 5, "owner1", 300));
+
+            ctx = begin("GetOwnerOfAsset", "asset1");
+            assertThat(contract.GetOwnerOfAsset(ctx, "asset1").getOwnerID()).isEqualTo("owner1");
+        }
+
+        @Test
+        public void givesEvaluatedTransactionsAReadOnlyManager() {
+            EntityContext ctx = begin("CreateOwner", "owner1", "Tomoko", "Smith");
+            end(ctx, contract.CreateOwner(ctx, "owner1", "Tomoko", "Smith"));
+            ctx = begin("CreateAsset", "asset1", "blue", "5", "owner1", "300");
+            end(ctx, contract.CreateAsset(ctx, "asset1", "blue", 5, "owner1", 300));
+            peer.resetCalls();
+
+            EntityContext read = begin("ReadAsset", "asset1");
+            Asset asset = contract.ReadAsset(read, "asset1");
+            contract.afterTransaction(read, asset);
+
+            assertThat(read.getEntityManager().isReadOnly()).isTrue();
+            assertThat(asset.getOwnerID()).isEqualTo("owner1");
+            assertThat(peer.getCalls(ChaincodeMessage.Type.PUT_STATE)).isZero();
+            Throwable thrown = catchThrowable(() -> read.getEntityManager().save(new Owner("owner2", "Brad", "Jones")));
+            assertThat(thrown).isInstanceOf(ChaincodeException.class).hasMessage("READ ONLY TRANSACTION");
+        }
+    }
+
+    @Nested
+    class Metrics {
+
+        @Test
+        public void countsTransactionsThatThrow() {
+            PrometheusMetrics prometheus = new PrometheusMetrics();
+            prometheus.started("TransferAsset");
+            prometheus.started("TransferAsset");
+            prometheus.record("TransferAsset", new EntityManager(stub, registry, true).finishMetrics());
+
+            assertThat(prometheus.scrape())
+                    .contains("orm_transactions_started_total{transaction=\"TransferAsset\"} 2\n")
+                    .contains("orm_transactions_total{transaction=\"TransferAsset\"} 1\n");
+        }
+
+        @Test
+        public void disablesMetricsThatCannotBeServed() throws Exception {
+            assertThat(OrmMetrics.forPort("metrics")).isSameAs(OrmMetrics.NONE);
+            try (ServerSocket taken = new ServerSocket(0)) {
+                assertThat(OrmMetrics.forPort(Integer.toString(taken.getLocalPort()))).isSameAs(OrmMetrics.NONE);
+            }
+        }
+    }
+
+    @Nested
+    class ViewDB {
+
+        @BeforeEach
+        public void putOwners() {
+            putOwner(new Owner("owner1", "Tomoko", "Smith"));
+            putOwner(new Owner("owner2", "Brad", "Jones"));
+            ledger.put(edgeKey("owner1", "asset1"), "\u0000");
+        }
+
+        @Test
+        public void streamsEveryOwnerAndClosesTheIterator() {
+            MockResultsIterator results = new MockResultsIterator(new CompositeKey("Owner").toString());
+            when(stub.getStateByPartialCompositeKey("Owner")).thenReturn(results);
+            EntityManager manager = new EntityManager(stub, registry, true);
+
+            assertThat(manager.viewDB()).isEqualTo("{\"owner1\":[\"asset1\"],\"owner2\":[]}");
+            assertThat(results.closed).isTrue();
+        }
+
+        @Test
+        public void returnsOnePageAndTheNextBookmark() throws Exception {
+            @SuppressWarnings("unchecked")
+            QueryResultsIteratorWithMetadata<KeyValue> page = mock(QueryResultsIteratorWithMetadata.class);
+            when(page.iterator()).thenReturn(new MockResultsIterator(key("Owner", "owner1")).iterator());
+            when(page.getMetadata()).thenReturn(
+                    QueryResponseMetadata.newBuilder().setFetchedRecordsCount(1).setBookmark(key("Owner", "owner2")).build());
+            when(stub.createCompositeKey("Owner")).thenReturn(new CompositeKey("Owner"));
+            when(stub.getStateByPartialCompositeKeyWithPagination(any(CompositeKey.class), eq(1), eq(""))).thenReturn(page);
+            EntityManager manager = new EntityManager(stub, registry, true);
+
+            String json = manager.viewDB(1, null);
+
+            assertThat(json).isEqualTo("{\"owners\":{\"owner1\":[\"asset1\"]},\"fetchedRecordsCount\":1,\"bookmark\":\""
+                    + key("Owner", "owner2").replace("\u0000", "\\u0000") + "\"}");
+            verify(page).close();
+        }
+    }
+
+    @Test
+    public void readsLegacyJSONWithBinaryCodec() {
+        putAsset(new Asset("asset1", "blue", 5, "owner1", 300));
+        putOwner(new Owner("owner1", "Tomoko", "Smith"));
+        AssetBinaryCodec codec = new AssetBinaryCodec(new JsonEntityCodec<>(Asset.class, genson));
+        EntityRegistry binaryAssets = new EntityRegistry(genson).register(Asset.class, codec).register(Owner.class);
+        EntityManager manager = new EntityManager(stub, binaryAssets, true);
+
+        Asset asset = manager.loadAsset("asset1");
+        asset.setColor("red");
+        manager.save(asset);
+        manager.flush();
+
+        verify(stub).putState(key("Asset", "asset1"), codec.encode(asset));
+    }
+
+    @Test
+    public void rejectsUnregisteredTypes() {
+        EntityManager manager = new EntityManager(stub, registry, true);
+
+        Throwable thrown = catchThrowable(() -> manager.save("not an entity"));
+
+        assertThat(thrown).isInstanceOf(ChaincodeException.class).hasMessage("Unsupported object type");
+        assertThat(catchThrowable(() -> registry.register(String.class))).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void writesThroughByDefault() {
+        EntityManager manager = new EntityManager(stub, registry);
+
+        manager.save(new Owner("owner1", "Tomoko", "Smith"));
+
+        verify(stub).putState(anyString(), any(byte[].class));
+    }
+}
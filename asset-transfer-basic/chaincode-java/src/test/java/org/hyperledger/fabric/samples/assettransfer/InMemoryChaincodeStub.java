@@ -0,0 +1,637 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.samples.assettransfer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.concurrent.locks.LockSupport;
+
+import org.hyperledger.fabric.protos.msp.Identities.SerializedIdentity;
+import org.hyperledger.fabric.protos.peer.ChaincodeEventPackage.ChaincodeEvent;
+import org.hyperledger.fabric.protos.peer.ChaincodeShim.ChaincodeMessage;
+import org.hyperledger.fabric.protos.peer.ChaincodeShim.QueryResponseMetadata;
+import org.hyperledger.fabric.protos.peer.ProposalPackage.SignedProposal;
+import org.hyperledger.fabric.shim.Chaincode.Response;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+import org.hyperledger.fabric.shim.ledger.KeyModification;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
+
+import com.google.protobuf.ByteString;
+
+/**
+ * World state kept in sorted maps, for tests and benchmarks that need a real ledger rather
+ * than per-call mocks. As on a peer, writes go to the transaction's write set and are only
+ * visible to reads once {@link #commit()} is called; {@link #beginTransaction(String)} starts
+ * over with an empty write set.
+ *
+ * Every call that the shim turns into a message to the peer is counted under that message
+ * type, and can be delayed by a configurable latency, so tests can assert how many round trips
+ * an operation makes and benchmarks can weigh them. Query results are returned in batches of
+ * {@link #setQueryBatchSize(int) queryBatchSize} rows, each further batch being a
+ * QUERY_STATE_NEXT round trip, as the peer does.
+ *
+ * The function and arguments returned to the contract are set with
+ * {@link #withInvocation(String, String...)}, and transactions are signed by a fixed test
+ * identity of Org1MSP unless {@link #setCreator(String, String)} says otherwise, so that a
+ * contract can also be driven through createContext, beforeTransaction and afterTransaction.
+ */
+public class InMemoryChaincodeStub implements ChaincodeStub {
+
+    private static final byte[] DELETED = new byte[0];
+    private static final String MAX_UNICODE_RUNE = new String(Character.toChars(Character.MAX_CODE_POINT));
+    // The peer's maxResultLimit for each QUERY_STATE_NEXT response.
+    private static final int DEFAULT_QUERY_BATCH_SIZE = 100;
+    // Self-signed, valid until 2126; any X.509 certificate will do for ClientIdentity.
+    private static final String TEST_CERTIFICATE = "-----BEGIN CERTIFICATE-----\n"
+            + "MIIB7jCCAZWgAwIBAgIUIsBTnyOh9sFCSjFvmEZ7akcc4nUwCgYIKoZIzj0EAwIw\n"
+            + "TDELMAkGA1UEBhMCVVMxGTAXBgNVBAoMEG9yZzEuZXhhbXBsZS5jb20xDzANBgNV\n"
+            + "BAsMBmNsaWVudDERMA8GA1UEAwwIdGVzdFVzZXIwIBcNMjYxMDE3MjIwNzE3WhgP\n"
+            + "MjEyNjA5MjMyMjA3MTdaMEwxCzAJBgNVBAYTAlVTMRkwFwYDVQQKDBBvcmcxLmV4\n"
+            + "YW1wbGUuY29tMQ8wDQYDVQQLDAZjbGllbnQxETAPBgNVBAMMCHRlc3RVc2VyMFkw\n"
+            + "EwYHKoZIzj0CAQYIKoZIzj0DAQcDQgAE/Xg94CmMUCewfz7X9IMAKIqp8mozTyB2\n"
+            + "4HGkacUujTRPGvpTPZ0nvOpcK5+WeqsEWriJn0IUu3qmPxSNsNK3nKNTMFEwHQYD\n"
+            + "VR0OBBYEFE/feoFyaZ2EUqdr48gHdLxE5TEgMB8GA1UdIwQYMBaAFE/feoFyaZ2E\n"
+            + "Uqdr48gHdLxE5TEgMA8GA1UdEwEB/wQFMAMBAf8wCgYIKoZIzj0EAwIDRwAwRAIg\n"
+            + "fcehNTwj79x79OvT1XYI0IfBdcbg1BoQnkblAn6IDC4CIDF28afIlR3EMKrCWs8b\n"
+            + "TVYDqqrpv5A//rDj40Ihi8ur\n"
+            + "-----END CERTIFICATE-----\n";
+
+    private final NavigableMap<String, byte[]> state = new TreeMap<>();
+    private final Map<String, NavigableMap<String, byte[]>> privateState = new HashMap<>();
+    private final Map<String, byte[]> validationParameters = new HashMap<>();
+    private Map<String, byte[]> writeSet = new HashMap<>();
+    private Map<String, Map<String, byte[]>> privateWriteSets = new HashMap<>();
+    private Map<String, byte[]> transientData = Collections.emptyMap();
+    private String txId = "tx0";
+    private long txCount;
+    private ChaincodeEvent event;
+    private String function;
+    private List<String> parameters = Collections.emptyList();
+    private byte[] creator;
+
+    private final Map<ChaincodeMessage.Type, Long> calls = new EnumMap<>(ChaincodeMessage.Type.class);
+    private final Map<ChaincodeMessage.Type, Duration> latencies = new EnumMap<>(ChaincodeMessage.Type.class);
+    private Duration defaultLatency = Duration.ZERO;
+    private int queryBatchSize = DEFAULT_QUERY_BATCH_SIZE;
+
+    /**
+     * Discards the current write set and starts a transaction with the given ID.
+     */
+    public void beginTransaction(final String id) {
+        writeSet = new HashMap<>();
+        privateWriteSets = new HashMap<>();
+        transientData = Collections.emptyMap();
+        event = null;
+        txId = id;
+    }
+
+    /**
+     * Starts a transaction with a generated ID.
+     */
+    public void beginTransaction() {
+        beginTransaction("tx" + ++txCount);
+    }
+
+    /**
+     * Applies the write set to the world state, as the peer does for a valid transaction.
+     */
+    public void commit() {
+        apply(writeSet, state);
+        for (Map.Entry<String, Map<String, byte[]>> collection : privateWriteSets.entrySet()) {
+            apply(collection.getValue(), collection(collection.getKey()));
+        }
+        writeSet = new HashMap<>();
+        privateWriteSets = new HashMap<>();
+    }
+
+    private static void apply(final Map<String, byte[]> writes, final Map<String, byte[]> target) {
+        for (Map.Entry<String, byte[]> write : writes.entrySet()) {
+            if (write.getValue() == DELETED) {
+                target.remove(write.getKey());
+            } else {
+                target.put(write.getKey(), write.getValue());
+            }
+        }
+    }
+
+    /**
+     * Sets the function and arguments the contract sees, as the peer passes them on invoke.
+     * @return this stub
+     */
+    public InMemoryChaincodeStub withInvocation(final String name, final String... args) {
+        function = name;
+        parameters = Collections.unmodifiableList(Arrays.asList(args.clone()));
+        return this;
+    }
+
+    /**
+     * Signs further transactions as the holder of the PEM encoded certificate.
+     */
+    public void setCreator(final String mspId, final String certificate) {
+        creator = SerializedIdentity.newBuilder()
+                .setMspid(mspId)
+                .setIdBytes(ByteString.copyFromUtf8(certificate))
+                .build()
+                .toByteArray();
+    }
+
+    public void setTransient(final Map<String, byte[]> data) {
+        transientData = data;
+    }
+
+    /**
+     * @return the number of keys in the committed world state
+     */
+    public int size() {
+        return state.size();
+    }
+
+    /**
+     * Delays every call to the peer by the given latency, unless one was set for its message type.
+     */
+    public void setLatency(final Duration latency) {
+        defaultLatency = latency;
+    }
+
+    public void setLatency(final ChaincodeMessage.Type call, final Duration latency) {
+        latencies.put(call, latency);
+    }
+
+    public void setQueryBatchSize(final int size) {
+        queryBatchSize = size;
+    }
+
+    /**
+     * @return the number of calls of one message type since the last {@link #resetCalls()}
+     */
+    public long getCalls(final ChaincodeMessage.Type call) {
+        return calls.getOrDefault(call, 0L);
+    }
+
+    /**
+     * @return the number of calls of every message type since the last {@link #resetCalls()}
+     */
+    public long getRoundTrips() {
+        long total = 0;
+        for (long count : calls.values()) {
+            total += count;
+        }
+        return total;
+    }
+
+    public void resetCalls() {
+        calls.clear();
+    }
+
+    private void call(final ChaincodeMessage.Type type) {
+        calls.merge(type, 1L, Long::sum);
+        Duration latency = latencies.getOrDefault(type, defaultLatency);
+        if (!latency.isZero()) {
+            LockSupport.parkNanos(latency.toNanos());
+        }
+    }
+
+    @Override
+    public String getTxId() {
+        return txId;
+    }
+
+    @Override
+    public Map<String, byte[]> getTransient() {
+        return transientData;
+    }
+
+    @Override
+    public byte[] getState(final String key) {
+        call(ChaincodeMessage.Type.GET_STATE);
+        return valueOf(state.get(key));
+    }
+
+    @Override
+    public void putState(final String key, final byte[] value) {
+        call(ChaincodeMessage.Type.PUT_STATE);
+        writeSet.put(key, checkValue(key, value));
+    }
+
+    @Override
+    public void delState(final String key) {
+        call(ChaincodeMessage.Type.DEL_STATE);
+        writeSet.put(key, DELETED);
+    }
+
+    private static byte[] valueOf(final byte[] value) {
+        return value == null ? DELETED : value;
+    }
+
+    private static byte[] checkValue(final String key, final byte[] value) {
+        if (value == null || value.length == 0) {
+            throw new IllegalArgumentException("Cannot put an empty value for key " + key);
+        }
+        return value;
+    }
+
+    @Override
+    public byte[] getStateValidationParameter(final String key) {
+        call(ChaincodeMessage.Type.GET_STATE_METADATA);
+        return validationParameters.get(key);
+    }
+
+    @Override
+    public void setStateValidationParameter(final String key, final byte[] value) {
+        call(ChaincodeMessage.Type.PUT_STATE_METADATA);
+        validationParameters.put(key, value);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByRange(final String startKey, final String endKey) {
+        CompositeKey.validateSimpleKeys(startKey, endKey);
+        return new Results(rangeOf(state, startKey, endKey));
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(final String compositeKey) {
+        return getStateByPartialCompositeKey(compositeKeyOf(compositeKey));
+    }
+
+    /**
+     * As in the shim, a plain object type is accepted as well as a composite key.
+     */
+    private static CompositeKey compositeKeyOf(final String compositeKey) {
+        if (compositeKey.startsWith(CompositeKey.NAMESPACE)) {
+            return CompositeKey.parseCompositeKey(compositeKey);
+        }
+        return new CompositeKey(compositeKey);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(final String objectType, final String... attributes) {
+        return getStateByPartialCompositeKey(new CompositeKey(objectType, attributes));
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(final CompositeKey compositeKey) {
+        return new Results(prefixOf(state, compositeKey));
+    }
+
+    @Override
+    public QueryResultsIteratorWithMetadata<KeyValue> getStateByRangeWithPagination(final String startKey,
+            final String endKey, final int pageSize, final String bookmark) {
+        CompositeKey.validateSimpleKeys(startKey, endKey);
+        return page(rangeOf(state, startKey, endKey), pageSize, bookmark);
+    }
+
+    @Override
+    public QueryResultsIteratorWithMetadata<KeyValue> getStateByPartialCompositeKeyWithPagination(
+            final CompositeKey compositeKey, final int pageSize, final String bookmark) {
+        return page(prefixOf(state, compositeKey), pageSize, bookmark);
+    }
+
+    private static NavigableMap<String, byte[]> rangeOf(final NavigableMap<String, byte[]> entries,
+            final String startKey, final String endKey) {
+        if (endKey.isEmpty()) {
+            return entries.tailMap(startKey, true);
+        }
+        return entries.subMap(startKey, true, endKey, false);
+    }
+
+    private static NavigableMap<String, byte[]> prefixOf(final NavigableMap<String, byte[]> entries,
+            final CompositeKey compositeKey) {
+        String prefix = compositeKey.toString();
+        return entries.subMap(prefix, true, prefix + MAX_UNICODE_RUNE, false);
+    }
+
+    /**
+     * Reads up to pageSize entries starting at the bookmark. As with LevelDB, the bookmark of a
+     * page is the key the next page starts at, or empty after the last page.
+     */
+    private QueryResultsIteratorWithMetadata<KeyValue> page(final NavigableMap<String, byte[]> entries,
+            final int pageSize, final String bookmark) {
+        call(ChaincodeMessage.Type.GET_STATE_BY_RANGE);
+        NavigableMap<String, byte[]> remaining = bookmark.isEmpty() ? entries : entries.tailMap(bookmark, true);
+        List<KeyValue> rows = new ArrayList<>(Math.min(pageSize, remaining.size()));
+        String next = "";
+        for (Map.Entry<String, byte[]> entry : remaining.entrySet()) {
+            if (rows.size() == pageSize) {
+                next = entry.getKey();
+                break;
+            }
+            rows.add(new Row(entry.getKey(), entry.getValue()));
+        }
+        QueryResponseMetadata metadata = QueryResponseMetadata.newBuilder()
+                .setFetchedRecordsCount(rows.size())
+                .setBookmark(next)
+                .build();
+        return new Page(rows, metadata);
+    }
+
+    @Override
+    public CompositeKey createCompositeKey(final String objectType, final String... attributes) {
+        return new CompositeKey(objectType, attributes);
+    }
+
+    @Override
+    public CompositeKey splitCompositeKey(final String compositeKey) {
+        return CompositeKey.parseCompositeKey(compositeKey);
+    }
+
+    private NavigableMap<String, byte[]> collection(final String collection) {
+        return privateState.computeIfAbsent(collection, name -> new TreeMap<>());
+    }
+
+    private Map<String, byte[]> privateWriteSet(final String collection) {
+        return privateWriteSets.computeIfAbsent(collection, name -> new HashMap<>());
+    }
+
+    @Override
+    public byte[] getPrivateData(final String collection, final String key) {
+        call(ChaincodeMessage.Type.GET_STATE);
+        return valueOf(collection(collection).get(key));
+    }
+
+    @Override
+    public byte[] getPrivateDataHash(final String collection, final String key) {
+        call(ChaincodeMessage.Type.GET_PRIVATE_DATA_HASH);
+        byte[] value = collection(collection).get(key);
+        if (value == null) {
+            return DELETED;
+        }
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(value);
+        } catch (NoSuchAlgorithmException error) {
+            throw new IllegalStateException(error);
+        }
+    }
+
+    @Override
+    public void putPrivateData(final String collection, final String key, final byte[] value) {
+        call(ChaincodeMessage.Type.PUT_STATE);
+        privateWriteSet(collection).put(key, checkValue(key, value));
+    }
+
+    @Override
+    public void delPrivateData(final String collection, final String key) {
+        call(ChaincodeMessage.Type.DEL_STATE);
+        privateWriteSet(collection).put(key, DELETED);
+    }
+
+    @Override
+    public byte[] getPrivateDataValidationParameter(final String collection, final String key) {
+        call(ChaincodeMessage.Type.GET_STATE_METADATA);
+        return validationParameters.get(collection + CompositeKey.NAMESPACE + key);
+    }
+
+    @Override
+    public void setPrivateDataValidationParameter(final String collection, final String key, final byte[] value) {
+        call(ChaincodeMessage.Type.PUT_STATE_METADATA);
+        validationParameters.put(collection + CompositeKey.NAMESPACE + key, value);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataByRange(final String collection, final String startKey,
+            final String endKey) {
+        CompositeKey.validateSimpleKeys(startKey, endKey);
+        return new Results(rangeOf(collection(collection), startKey, endKey));
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataByPartialCompositeKey(final String collection,
+            final String compositeKey) {
+        return getPrivateDataByPartialCompositeKey(collection, compositeKeyOf(compositeKey));
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataByPartialCompositeKey(final String collection,
+            final CompositeKey prefix) {
+        return new Results(prefixOf(collection(collection), prefix));
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataByPartialCompositeKey(final String collection,
+            final String objectType, final String... attributes) {
+        return getPrivateDataByPartialCompositeKey(collection, new CompositeKey(objectType, attributes));
+    }
+
+    @Override
+    public void setEvent(final String name, final byte[] payload) {
+        event = ChaincodeEvent.newBuilder()
+                .setEventName(name)
+                .setTxId(txId)
+                .setPayload(ByteString.copyFrom(payload))
+                .build();
+    }
+
+    @Override
+    public ChaincodeEvent getEvent() {
+        return event;
+    }
+
+    @Override
+    public Instant getTxTimestamp() {
+        return Instant.now();
+    }
+
+    @Override
+    public String getChannelId() {
+        return "mychannel";
+    }
+
+    @Override
+    public String getMspId() {
+        return "Org1MSP";
+    }
+
+    private static final class Row implements KeyValue {
+        private final String key;
+        private final byte[] value;
+
+        Row(final String key, final byte[] value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public byte[] getValue() {
+            return value;
+        }
+
+        @Override
+        public String getStringValue() {
+            return new String(value, UTF_8);
+        }
+    }
+
+    /**
+     * Iterates the committed entries lazily, batch by batch. Writes only reach them on
+     * {@link #commit()}, so like a peer's iterator, this one never sees the current transaction's writes.
+     */
+    private final class Results implements QueryResultsIterator<KeyValue> {
+        private final Iterator<Map.Entry<String, byte[]>> entries;
+        private int leftInBatch;
+        private boolean closed;
+
+        Results(final Map<String, byte[]> entries) {
+            call(ChaincodeMessage.Type.GET_STATE_BY_RANGE);
+            this.entries = entries.entrySet().iterator();
+            this.leftInBatch = queryBatchSize;
+        }
+
+        @Override
+        public Iterator<KeyValue> iterator() {
+            return new Iterator<KeyValue>() {
+                @Override
+                public boolean hasNext() {
+                    return !closed && entries.hasNext();
+                }
+
+                @Override
+                public KeyValue next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    if (leftInBatch == 0) {
+                        call(ChaincodeMessage.Type.QUERY_STATE_NEXT);
+                        leftInBatch = queryBatchSize;
+                    }
+                    leftInBatch--;
+                    Map.Entry<String, byte[]> row = entries.next();
+                    return new Row(row.getKey(), row.getValue());
+                }
+            };
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                call(ChaincodeMessage.Type.QUERY_STATE_CLOSE);
+            }
+        }
+    }
+
+    private final class Page implements QueryResultsIteratorWithMetadata<KeyValue> {
+        private final List<KeyValue> rows;
+        private final QueryResponseMetadata metadata;
+        private boolean closed;
+
+        Page(final List<KeyValue> rows, final QueryResponseMetadata metadata) {
+            this.rows = rows;
+            this.metadata = metadata;
+        }
+
+        @Override
+        public QueryResponseMetadata getMetadata() {
+            return metadata;
+        }
+
+        @Override
+        public Iterator<KeyValue> iterator() {
+            return rows.iterator();
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                call(ChaincodeMessage.Type.QUERY_STATE_CLOSE);
+            }
+        }
+    }
+
+    @Override
+    public List<byte[]> getArgs() {
+        List<byte[]> args = new ArrayList<>();
+        for (String arg : getStringArgs()) {
+            args.add(arg.getBytes(UTF_8));
+        }
+        return args;
+    }
+
+    @Override
+    public List<String> getStringArgs() {
+        if (function == null) {
+            return Collections.emptyList();
+        }
+        List<String> args = new ArrayList<>();
+        args.add(function);
+        args.addAll(parameters);
+        return args;
+    }
+
+    @Override
+    public String getFunction() {
+        return function;
+    }
+
+    @Override
+    public List<String> getParameters() {
+        return parameters;
+    }
+
+    @Override
+    public Response invokeChaincode(final String chaincodeName, final List<byte[]> args, final String channel) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getQueryResult(final String query) {
+        throw new UnsupportedOperationException("Rich queries need CouchDB");
+    }
+
+    @Override
+    public QueryResultsIteratorWithMetadata<KeyValue> getQueryResultWithPagination(final String query,
+            final int pageSize, final String bookmark) {
+        throw new UnsupportedOperationException("Rich queries need CouchDB");
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataQueryResult(final String collection, final String query) {
+        throw new UnsupportedOperationException("Rich queries need CouchDB");
+    }
+
+    @Override
+    public QueryResultsIterator<KeyModification> getHistoryForKey(final String key) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public SignedProposal getSignedProposal() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public byte[] getCreator() {
+        if (creator == null) {
+            setCreator("Org1MSP", TEST_CERTIFICATE);
+        }
+        return creator.clone();
+    }
+
+    @Override
+    public byte[] getBinding() {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -4,9 +4,7 @@
  * SPDX-License-Identifier: Apache-2.0
  */
 
-import io.grpc.Grpc;
 import io.grpc.ManagedChannel;
-import io.grpc.TlsChannelCredentials;
 import org.hyperledger.fabric.client.identity.Identities;
 import org.hyperledger.fabric.client.identity.Identity;
 import org.hyperledger.fabric.client.identity.Signer;
@@ -21,18 +19,21 @@ import java.security.InvalidKeyException;
 import java.security.cert.CertificateException;
 
 public final class Connections {
+    // Path to the crypto materials of every organization.
+    private static final Path peerOrganizationsPath = Paths.get("..", "..", "test-network", "organizations", "peerOrganizations");
     // Path to crypto materials.
-    private static final Path cryptoPath = Paths.get("..", "..", "test-network", "organizations", "peerOrganizations",	"org1.example.com");
+    private static final Path cryptoPath = peerOrganizationsPath.resolve("org1.example.com");
     // Path to user certificate.
     private static final Path certPath = cryptoPath.resolve(Paths.get("users", "User1@org1.example.com", "msp", "signcerts", "cert.pem"));
     // Path to user private key directory.
     private static final Path keyDirPath = cryptoPath.resolve(Paths.get("users", "User1@org1.example.com", "msp", "keystore"));
-    // Path to peer tls certificate.
-    private static final Path tlsCertPath = cryptoPath.resolve(Paths.get("peers", "peer0.org1.example.com", "tls", "ca.crt"));
 
-    // Gateway peer end point.
-    private static final String peerEndpoint = "localhost:7051";
-    private static final String overrideAuth = "peer0.org1.example.com";
+    // Gateway peer end points, as host:port@peer-host-name. Evaluations are spread across all of
+    // them; other calls go to the first one that is healthy. Only the org1 peer by default, which
+    // every test network has; to add the org2 peer, set PEER_ENDPOINTS to
+    // "localhost:7051@peer0.org1.example.com,localhost:9051@peer0.org2.example.com".
+    private static final String peerEndpoints = System.getenv().getOrDefault("PEER_ENDPOINTS",
+            "localhost:7051@peer0.org1.example.com");
 
     private static final String mspID = "Org1MSP";
 
@@ -41,12 +42,7 @@ public final class Connections {
     }
 
     public static ManagedChannel newGrpcConnection() throws IOException {
-        var credentials = TlsChannelCredentials.newBuilder()
-                .trustManager(tlsCertPath.toFile())
-                .build();
-        return Grpc.newChannelBuilder(peerEndpoint, credentials)
-                .overrideAuthority(overrideAuth)
-                .build();
+        return PeerPool.connect(PeerPool.parseEndpoints(peerOrganizationsPath, peerEndpoints));
     }
 
     public static Identity newIdentity() throws IOException, CertificateException {
@@ -0,0 +1,302 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+import io.grpc.CallOptions;
+import io.grpc.ClientCall;
+import io.grpc.ConnectivityState;
+import io.grpc.ForwardingClientCall;
+import io.grpc.ForwardingClientCallListener;
+import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+import io.grpc.TlsChannelCredentials;
+import io.grpc.netty.shaded.io.grpc.netty.NettyChannelBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One gRPC channel to each of several gateway peers, used as a single channel by a Gateway.
+ * Evaluate calls go to the healthy peer with the fewest calls outstanding; every other call,
+ * including event streams, goes to the first healthy peer in the list. A peer is ejected for
+ * {@link #EJECTION_TIME} after {@link #FAILURES_TO_EJECT} consecutive calls fail with
+ * UNAVAILABLE or DEADLINE_EXCEEDED, or while its channel is in TRANSIENT_FAILURE.
+ *
+ * <p>Each sample application builds on its own, so asset-transfer-basic has its own copy of
+ * this class; keep the two the same.
+ */
+public final class PeerPool extends ManagedChannel {
+	// Full name of the Gateway service's Evaluate method.
+	private static final String EVALUATE_METHOD = "gateway.Gateway/Evaluate";
+
+	static final int FAILURES_TO_EJECT = 3;
+	static final long EJECTION_TIME = TimeUnit.SECONDS.toNanos(30);
+
+	// Peers reject clients that ping more often than their keepalive.minInterval, 60s by default.
+	private static final long KEEPALIVE_TIME_SECONDS = 120;
+	private static final long KEEPALIVE_TIMEOUT_SECONDS = 20;
+	// Larger than the 1 MiB default, so large query results are not throttled on the first round trips.
+	private static final int FLOW_CONTROL_WINDOW = 4 * 1024 * 1024;
+	private static final int MAX_INBOUND_MESSAGE_SIZE = 100 * 1024 * 1024;
+
+	/**
+	 * Where to reach one gateway peer.
+	 */
+	public static final class Endpoint {
+		private final String address;
+		private final String authority;
+		private final Path tlsCertPath;
+
+		public Endpoint(final String address, final String authority, final Path tlsCertPath) {
+			this.address = address;
+			this.authority = authority;
+			this.tlsCertPath = tlsCertPath;
+		}
+
+		/**
+		 * @param spec "host:port@peer0.org1.example.com", with the TLS CA certificate of the peer
+		 *             taken from the test network's crypto material
+		 */
+		static Endpoint parse(final Path peerOrganizationsPath, final String spec) {
+			var parts = spec.trim().split("@");
+			if (parts.length != 2 || !parts[0].matches("[^:]+:\\d+")) {
+				throw new IllegalArgumentException("Expected host:port@peer-host-name but got " + spec);
+			}
+			var peer = parts[1];
+			var dot = peer.indexOf('.');
+			if (dot <= 0 || dot == peer.length() - 1) {
+				throw new IllegalArgumentException("Expected a peer host name such as peer0.org1.example.com in " + spec);
+			}
+			var organization = peer.substring(dot + 1);
+			var tlsCertPath = peerOrganizationsPath.resolve(Paths.get(organization, "peers", peer, "tls", "ca.crt"));
+			if (!Files.isRegularFile(tlsCertPath)) {
+				throw new IllegalArgumentException("No TLS CA certificate for " + spec + " at " + tlsCertPath);
+			}
+			return new Endpoint(parts[0], peer, tlsCertPath);
+		}
+
+		@Override
+		public String toString() {
+			return address + "@" + authority;
+		}
+	}
+
+	/**
+	 * A connected peer and what the pool knows of its health.
+	 */
+	private static final class Member {
+		private final Endpoint endpoint;
+		private final ManagedChannel channel;
+		private final AtomicInteger outstanding = new AtomicInteger();
+		private final AtomicInteger consecutiveFailures = new AtomicInteger();
+		private volatile long ejectedUntil;
+
+		Member(final Endpoint endpoint, final ManagedChannel channel) {
+			this.endpoint = endpoint;
+			this.channel = channel;
+		}
+
+		boolean isHealthy(final long now) {
+			return now - ejectedUntil >= 0 && channel.getState(false) != ConnectivityState.TRANSIENT_FAILURE;
+		}
+
+		void record(final Status status) {
+			var code = status.getCode();
+			if (code != Status.Code.UNAVAILABLE && code != Status.Code.DEADLINE_EXCEEDED) {
+				consecutiveFailures.set(0);
+				return;
+			}
+			if (consecutiveFailures.incrementAndGet() >= FAILURES_TO_EJECT) {
+				consecutiveFailures.set(0);
+				ejectedUntil = System.nanoTime() + EJECTION_TIME;
+			}
+		}
+	}
+
+	private final List<Member> members;
+	// Where the next scan for the least outstanding member starts, so ties are spread too.
+	private final AtomicInteger next = new AtomicInteger();
+
+	private PeerPool(final List<Member> members) {
+		if (members.isEmpty()) {
+			throw new IllegalArgumentException("No peer endpoints given");
+		}
+		this.members = members;
+	}
+
+	/**
+	 * Opens a channel to every endpoint, with keepalive and a larger flow control window.
+	 */
+	public static PeerPool connect(final List<Endpoint> endpoints) throws IOException {
+		var members = new ArrayList<Member>(endpoints.size());
+		for (var endpoint : endpoints) {
+			var credentials = TlsChannelCredentials.newBuilder()
+					.trustManager(endpoint.tlsCertPath.toFile())
+					.build();
+			var channel = NettyChannelBuilder.forTarget(endpoint.address, credentials)
+					.keepAliveTime(KEEPALIVE_TIME_SECONDS, TimeUnit.SECONDS)
+					.keepAliveTimeout(KEEPALIVE_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+					.keepAliveWithoutCalls(true)
+					.flowControlWindow(FLOW_CONTROL_WINDOW)
+					.maxInboundMessageSize(MAX_INBOUND_MESSAGE_SIZE)
+					.overrideAuthority(endpoint.authority)
+					.build();
+			members.add(new Member(endpoint, channel));
+		}
+		return new PeerPool(Collections.unmodifiableList(members));
+	}
+
+	/**
+	 * @param specs comma separated endpoints, as accepted by {@link Endpoint#parse}
+	 */
+	static List<Endpoint> parseEndpoints(final Path peerOrganizationsPath, final String specs) {
+		var endpoints = new ArrayList<Endpoint>();
+		for (var spec : specs.split(",")) {
+			endpoints.add(Endpoint.parse(peerOrganizationsPath, spec));
+		}
+		return endpoints;
+	}
+
+	@Override
+	public <Q, R> ClientCall<Q, R> newCall(final MethodDescriptor<Q, R> method, final CallOptions options) {
+		var member = EVALUATE_METHOD.equals(method.getFullMethodName()) ? leastOutstanding() : firstHealthy();
+		return track(member, member.channel.newCall(method, options));
+	}
+
+	/**
+	 * @return the healthy member with the fewest calls outstanding, or the one back soonest if none is healthy
+	 */
+	private Member leastOutstanding() {
+		var now = System.nanoTime();
+		var start = Math.floorMod(next.getAndIncrement(), members.size());
+		Member best = null;
+		for (int i = 0; i < members.size(); i++) {
+			var member = members.get((start + i) % members.size());
+			if (member.isHealthy(now) && (best == null || member.outstanding.get() < best.outstanding.get())) {
+				best = member;
+			}
+		}
+		return best != null ? best : soonestBack();
+	}
+
+	private Member firstHealthy() {
+		var now = System.nanoTime();
+		for (var member : members) {
+			if (member.isHealthy(now)) {
+				return member;
+			}
+		}
+		return soonestBack();
+	}
+
+	/**
+	 * With every member ejected, calls still have to go somewhere: to the one ejected first.
+	 */
+	private Member soonestBack() {
+		var soonest = members.get(0);
+		for (var member : members) {
+			if (member.ejectedUntil - soonest.ejectedUntil < 0) {
+				soonest = member;
+			}
+		}
+		return soonest;
+	}
+
+	private static <Q, R> ClientCall<Q, R> track(final Member member, final ClientCall<Q, R> call) {
+		return new ForwardingClientCall.SimpleForwardingClientCall<>(call) {
+			@Override
+			public void start(final Listener<R> listener, final Metadata headers) {
+				member.outstanding.incrementAndGet();
+				try {
+					super.start(new ForwardingClientCallListener.SimpleForwardingClientCallListener<>(listener) {
+						@Override
+						public void onClose(final Status status, final Metadata trailers) {
+							member.outstanding.decrementAndGet();
+							member.record(status);
+							super.onClose(status, trailers);
+						}
+					}, headers);
+				} catch (RuntimeException e) {
+					member.outstanding.decrementAndGet();
+					throw e;
+				}
+			}
+		};
+	}
+
+	/**
+	 * @return the number of calls outstanding on each endpoint
+	 */
+	public String describe() {
+		var now = System.nanoTime();
+		var description = new StringBuilder();
+		for (var member : members) {
+			if (description.length() > 0) {
+				description.append(", ");
+			}
+			description.append(member.endpoint).append(": ").append(member.outstanding.get()).append(" outstanding");
+			if (!member.isHealthy(now)) {
+				description.append(" (ejected)");
+			}
+		}
+		return description.toString();
+	}
+
+	@Override
+	public String authority() {
+		return members.get(0).channel.authority();
+	}
+
+	@Override
+	public ConnectivityState getState(final boolean requestConnection) {
+		var now = System.nanoTime();
+		for (var member : members) {
+			if (member.isHealthy(now) && member.channel.getState(requestConnection) == ConnectivityState.READY) {
+				return ConnectivityState.READY;
+			}
+		}
+		return members.get(0).channel.getState(requestConnection);
+	}
+
+	@Override
+	public ManagedChannel shutdown() {
+		members.forEach(member -> member.channel.shutdown());
+		return this;
+	}
+
+	@Override
+	public ManagedChannel shutdownNow() {
+		members.forEach(member -> member.channel.shutdownNow());
+		return this;
+	}
+
+	@Override
+	public boolean isShutdown() {
+		return members.stream().allMatch(member -> member.channel.isShutdown());
+	}
+
+	@Override
+	public boolean isTerminated() {
+		return members.stream().allMatch(member -> member.channel.isTerminated());
+	}
+
+	@Override
+	public boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException {
+		var deadline = System.nanoTime() + unit.toNanos(timeout);
+		for (var member : members) {
+			if (!member.channel.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
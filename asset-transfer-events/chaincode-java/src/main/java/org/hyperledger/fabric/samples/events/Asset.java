@@ -4,8 +4,6 @@
 
 package org.hyperledger.fabric.samples.events;
 
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Objects;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
@@ -86,16 +84,16 @@ public final class Asset {
     }
 
     public String serialize(final String privateProps) {
-        Map<String, Object> tMap = new HashMap();
-        tMap.put("ID", assetID);
-        tMap.put("Color",  color);
-        tMap.put("Owner",  owner);
-        tMap.put("Size", Integer.toString(size));
-        tMap.put("AppraisedValue", Integer.toString(appraisedValue));
+        JSONObject json = new JSONObject();
+        json.put("ID", assetID);
+        json.put("Color",  color);
+        json.put("Owner",  owner);
+        json.put("Size", Integer.toString(size));
+        json.put("AppraisedValue", Integer.toString(appraisedValue));
         if (privateProps != null && privateProps.length() > 0) {
-            tMap.put("asset_properties", new JSONObject(privateProps));
+            json.put("asset_properties", new JSONObject(privateProps));
         }
-        return new JSONObject(tMap).toString();
+        return json.toString();
     }
 
     public static Asset deserialize(final byte[] assetJSON) {
@@ -105,18 +103,17 @@ public final class Asset {
     public static Asset deserialize(final String assetJSON) {
 
         JSONObject json = new JSONObject(assetJSON);
-        Map<String, Object> tMap = json.toMap();
-        final String id = (String) tMap.get("ID");
+        final String id = json.optString("ID", null);
 
-        final String color = (String) tMap.get("Color");
-        final String owner = (String) tMap.get("Owner");
+        final String color = json.optString("Color", null);
+        final String owner = json.optString("Owner", null);
         int size = 0;
         int appraisedValue = 0;
-        if (tMap.containsKey("Size")) {
-            size = Integer.parseInt((String) tMap.get("Size"));
+        if (json.has("Size")) {
+            size = Integer.parseInt(json.getString("Size"));
         }
-        if (tMap.containsKey("AppraisedValue")) {
-            appraisedValue = Integer.parseInt((String) tMap.get("AppraisedValue"));
+        if (json.has("AppraisedValue")) {
+            appraisedValue = Integer.parseInt(json.getString("AppraisedValue"));
         }
         return new Asset(id, color, size, owner, appraisedValue);
 
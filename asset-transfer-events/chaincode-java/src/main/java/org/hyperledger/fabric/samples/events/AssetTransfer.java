@@ -18,6 +18,7 @@ import org.hyperledger.fabric.shim.ChaincodeException;
 import org.hyperledger.fabric.shim.ChaincodeStub;
 
 import java.util.Map;
+import java.util.logging.Logger;
 
 /**
  * Main Chaincode class.
@@ -48,6 +49,8 @@ public final class AssetTransfer implements ContractInterface {
     static final String IMPLICIT_COLLECTION_NAME_PREFIX = "_implicit_org_";
     static final String PRIVATE_PROPS_KEY = "asset_properties";
 
+    private static final Logger LOGGER = Logging.getLogger(AssetTransfer.class);
+
     /**
      * Retrieves the asset details with the specified ID
      *
@@ -57,7 +60,7 @@ public final class AssetTransfer implements ContractInterface {
      */
     @Transaction(intent = Transaction.TYPE.EVALUATE)
     public String ReadAsset(final Context ctx, final String assetID) {
-        System.out.printf("ReadAsset: ID %s\n", assetID);
+        LOGGER.fine(() -> String.format("ReadAsset: ID %s", assetID));
 
         Asset asset = getState(ctx, assetID);
         String privData = readPrivateData(ctx, assetID);
@@ -89,27 +92,27 @@ public final class AssetTransfer implements ContractInterface {
         }
 
         if (errorMessage != null) {
-            System.err.println(errorMessage);
+            LOGGER.info(errorMessage);
             throw new ChaincodeException(errorMessage, AssetTransferErrors.INCOMPLETE_INPUT.toString());
         }
         // Check if asset already exists
         byte[] assetJSON = ctx.getStub().getState(assetID);
         if (assetJSON != null && assetJSON.length > 0) {
             errorMessage = String.format("Asset %s already exists", assetID);
-            System.err.println(errorMessage);
+            LOGGER.info(errorMessage);
             throw new ChaincodeException(errorMessage, AssetTransferErrors.ASSET_ALREADY_EXISTS.toString());
         }
 
         Asset asset = new Asset(assetID, color, size, owner, appraisedValue);
 
         savePrivateData(ctx, assetID);
-        assetJSON = asset.serialize();
-        System.out.printf("CreateAsset Put: ID %s Data %s\n", assetID, new String(assetJSON));
+        byte[] createdJSON = asset.serialize();
+        LOGGER.fine(() -> String.format("CreateAsset Put: ID %s Data %s", assetID, new String(createdJSON, UTF_8)));
 
-        stub.putState(assetID, assetJSON);
+        stub.putState(assetID, createdJSON);
         // add Event data to the transaction data. Event will be published after the block containing
         // this transaction is committed
-        stub.setEvent("CreateAsset", assetJSON);
+        stub.setEvent("CreateAsset", createdJSON);
         return asset;
     }
 
@@ -135,15 +138,15 @@ public final class AssetTransfer implements ContractInterface {
             errorMessage = "Empty input: newOwner";
         }
         if (errorMessage != null) {
-            System.err.println(errorMessage);
+            LOGGER.info(errorMessage);
             throw new ChaincodeException(errorMessage, AssetTransferErrors.INCOMPLETE_INPUT.toString());
         }
-        System.out.printf("TransferAsset: verify asset %s exists\n", assetID);
+        LOGGER.fine(() -> String.format("TransferAsset: verify asset %s exists", assetID));
         Asset thisAsset = getState(ctx, assetID);
         // Transfer asset to new owner
         thisAsset.setOwner(newOwner);
 
-        System.out.printf(" Transfer Asset: ID %s to owner %s\n", assetID, newOwner);
+        LOGGER.fine(() -> String.format("Transfer Asset: ID %s to owner %s", assetID, newOwner));
         savePrivateData(ctx, assetID); // save private data if any
         byte[] assetJSON = thisAsset.serialize();
 
@@ -174,7 +177,7 @@ public final class AssetTransfer implements ContractInterface {
         }
 
         if (errorMessage != null) {
-            System.err.println(errorMessage);
+            LOGGER.info(errorMessage);
             throw new ChaincodeException(errorMessage, AssetTransferErrors.INCOMPLETE_INPUT.toString());
         }
         // reads from the Statedb. Check if asset already exists
@@ -195,7 +198,7 @@ public final class AssetTransfer implements ContractInterface {
 
         savePrivateData(ctx, assetID);
         byte[] assetJSON = asset.serialize();
-        System.out.printf("UpdateAsset Put: ID %s Data %s\n", assetID, new String(assetJSON));
+        LOGGER.fine(() -> String.format("UpdateAsset Put: ID %s Data %s", assetID, new String(assetJSON, UTF_8)));
         stub.putState(assetID, assetJSON);
         stub.setEvent("UpdateAsset", assetJSON); //publish Event
         return asset;
@@ -210,10 +213,10 @@ public final class AssetTransfer implements ContractInterface {
     @Transaction(intent = Transaction.TYPE.SUBMIT)
     public void DeleteAsset(final Context ctx, final String assetID) {
         ChaincodeStub stub = ctx.getStub();
-        System.out.printf("DeleteAsset: verify asset %s exists\n", assetID);
+        LOGGER.fine(() -> String.format("DeleteAsset: verify asset %s exists", assetID));
         Asset asset = getState(ctx, assetID);
 
-        System.out.printf(" DeleteAsset:  ID %s\n", assetID);
+        LOGGER.fine(() -> String.format("DeleteAsset: ID %s", assetID));
         // delete private details of asset
         removePrivateData(ctx, assetID);
         stub.delState(assetID);         // delete the key from Statedb
@@ -224,7 +227,7 @@ public final class AssetTransfer implements ContractInterface {
         byte[] assetJSON = ctx.getStub().getState(assetID);
         if (assetJSON == null || assetJSON.length == 0) {
             String errorMessage = String.format("Asset %s does not exist", assetID);
-            System.err.println(errorMessage);
+            LOGGER.info(errorMessage);
             throw new ChaincodeException(errorMessage, AssetTransferErrors.ASSET_NOT_FOUND.toString());
         }
 
@@ -243,7 +246,7 @@ public final class AssetTransfer implements ContractInterface {
         String privData = null;
         // only if ClientOrgMatchesPeerOrg
         if (peerMSPID.equals(clientMSPID)) {
-            System.out.printf(" ReadPrivateData from collection %s, ID %s\n", implicitCollectionName, assetKey);
+            LOGGER.fine(() -> String.format("ReadPrivateData from collection %s, ID %s", implicitCollectionName, assetKey));
             byte[] propJSON = ctx.getStub().getPrivateData(implicitCollectionName, assetKey);
 
             if (propJSON != null && propJSON.length > 0) {
@@ -263,7 +266,7 @@ public final class AssetTransfer implements ContractInterface {
             if (transientMap != null && transientMap.containsKey(PRIVATE_PROPS_KEY)) {
                 byte[] transientAssetJSON = transientMap.get(PRIVATE_PROPS_KEY);
 
-                System.out.printf("Asset's PrivateData Put in collection %s, ID %s\n", implicitCollectionName, assetKey);
+                LOGGER.fine(() -> String.format("Asset's PrivateData Put in collection %s, ID %s", implicitCollectionName, assetKey));
                 ctx.getStub().putPrivateData(implicitCollectionName, assetKey, transientAssetJSON);
             }
         }
@@ -275,7 +278,7 @@ public final class AssetTransfer implements ContractInterface {
         String implicitCollectionName = getCollectionName(ctx);
 
         if (peerMSPID.equals(clientMSPID)) {
-            System.out.printf("PrivateData Delete from collection %s, ID %s\n", implicitCollectionName, assetKey);
+            LOGGER.fine(() -> String.format("PrivateData Delete from collection %s, ID %s", implicitCollectionName, assetKey));
             ctx.getStub().delPrivateData(implicitCollectionName, assetKey);
         }
     }
@@ -0,0 +1,114 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric.samples.events;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.ErrorManager;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+
+/**
+ * Hands log records to a background thread that writes them with the delegate handler, so
+ * transaction threads never wait on the container's stdout. When the queue is full, records
+ * are dropped and counted rather than blocking the transaction.
+ */
+public final class AsyncLogHandler extends Handler {
+
+    static final int DEFAULT_CAPACITY = 4096;
+
+    // How long flush() waits for the writer, checking every FLUSH_POLL_NANOS.
+    private static final long FLUSH_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(5);
+    private static final long FLUSH_POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final Handler delegate;
+    private final BlockingQueue<LogRecord> queue;
+    private final AtomicLong dropped = new AtomicLong();
+    // Records queued or being written, so flush() also waits for the one in flight.
+    private final AtomicLong pending = new AtomicLong();
+    private final Thread writer;
+    private volatile boolean closed;
+
+    public AsyncLogHandler(Handler delegate) {
+        this(delegate, DEFAULT_CAPACITY);
+    }
+
+    public AsyncLogHandler(Handler delegate, int capacity) {
+        this.delegate = delegate;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.writer = new Thread(this::drain, "async-log-handler");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    @Override
+    public void publish(LogRecord record) {
+        if (closed || !isLoggable(record)) {
+            return;
+        }
+        // The caller's source class and method are inferred lazily from the stack; take them now.
+        record.getSourceClassName();
+        pending.incrementAndGet();
+        if (!queue.offer(record)) {
+            pending.decrementAndGet();
+            dropped.incrementAndGet();
+        }
+    }
+
+    private void drain() {
+        try {
+            while (!closed || !queue.isEmpty()) {
+                LogRecord record = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (record == null) {
+                    continue;
+                }
+                try {
+                    delegate.publish(record);
+                    if (queue.isEmpty()) {
+                        delegate.flush();
+                    }
+                } finally {
+                    pending.decrementAndGet();
+                }
+            }
+        } catch (InterruptedException error) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException error) {
+            reportError("Log writer stopped", error, ErrorManager.WRITE_FAILURE);
+        }
+    }
+
+    /**
+     * @return the number of records dropped because the queue was full
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Waits until the queued records have been written, or for at most five seconds.
+     */
+    @Override
+    public void flush() {
+        long deadline = System.nanoTime() + FLUSH_TIMEOUT_NANOS;
+        while (pending.get() > 0 && writer.isAlive() && deadline - System.nanoTime() > 0) {
+            LockSupport.parkNanos(FLUSH_POLL_NANOS);
+        }
+        delegate.flush();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(1));
+        } catch (InterruptedException error) {
+            Thread.currentThread().interrupt();
+        }
+        delegate.close();
+    }
+}